@@ -2,6 +2,8 @@ package extension;
 
 import httpraider.controller.StreamController;
 import httpraider.controller.tools.EditorToolController;
+import httpraider.controller.tools.FloodToolController;
+import httpraider.controller.tools.TimelineToolController;
 import httpraider.controller.tools.ToolControllerInterface;
 import httpraider.view.menuBars.InspectorBar;
 import httpraider.view.panels.StreamPanel;
@@ -17,6 +19,8 @@ public class ToolsManager {
         gadgets.add(new EditorToolController(
                 view.getEditorToolsPanel(),
                 view.getClientRequestEditor(), controller));
+        gadgets.add(new TimelineToolController(view.getTimelinePanel(), controller));
+        gadgets.add(new FloodToolController(view.getFloodPanel(), controller));
         InspectorBar bar = view.getInspectorBar();
         gadgets.forEach(g -> bar.addTool(g.id(), g.name(), g.component()));
         gadgets.forEach(ToolControllerInterface::attach);
@@ -81,7 +81,7 @@ public final class ApplicationController {
     }
 
     private void removeSessionTab(int index){
-        sessionControllers.remove(index);
+        sessionControllers.remove(index).dispose();
     }
 
     @SuppressWarnings("unchecked")
@@ -1,6 +1,9 @@
 package httpraider.controller;
 
 import extension.HTTPRaiderExtension;
+import httpraider.controller.engines.ConnectionEngine;
+import httpraider.controller.engines.SessionExecutor;
+import httpraider.controller.engines.SynchronizedSend;
 import httpraider.model.SessionModel;
 import httpraider.model.StreamModel;
 import httpraider.model.network.NetworkModel;
@@ -12,11 +15,16 @@ import java.awt.event.MouseEvent;
 import java.util.ArrayList;
 import java.util.List;
 
+import static javax.swing.SwingUtilities.invokeLater;
+
 public final class SessionController extends AbstractController<SessionModel, SessionPanel> {
 
     private static final String KEY_NETWORK = "HTTPRaider.networks";
+    private static final int SYNC_TAIL_BYTES = 1;
     private final List<StreamController> streamControllers = new ArrayList<>();
     private final NetworkController networkController;
+    private final SessionExecutor sessionExecutor;
+    private final ConnectionEngine connectionEngine;
     private int nameSuffix;
 
     public SessionController(SessionModel model, SessionPanel sessionPanel) {
@@ -35,7 +43,10 @@ public final class SessionController extends AbstractController<SessionModel, Se
             model.setNetworkModel(networkModel);
         }
         networkController = new NetworkController(networkModel, sessionPanel.getNetworkPanel(), streamControllers);
+        sessionExecutor = new SessionExecutor("HTTPHacker-" + model.getId() + "-task");
+        connectionEngine = new ConnectionEngine("HTTPHacker-" + model.getId(), sessionExecutor);
         HTTPRaiderExtension.API.extension().registerUnloadingHandler(this::saveAll);
+        HTTPRaiderExtension.API.extension().registerUnloadingHandler(this::dispose);
         updateStreamsFromModel();
     }
 
@@ -44,7 +55,8 @@ public final class SessionController extends AbstractController<SessionModel, Se
         view.removeAllStreamTabs();
         for (StreamModel streamModel : model.getStreams()){
             StreamPanel streamPanel = new StreamPanel();
-            StreamController streamCtl = new StreamController(streamModel, streamPanel, networkController);
+            StreamController streamCtl = new StreamController(streamModel, streamPanel, networkController, connectionEngine, sessionExecutor);
+            streamCtl.setSynchronizedSendHandler(this::synchronizedSend);
             streamControllers.add(streamCtl);
             view.addStreamTab(streamModel.getName(), streamPanel);
         }
@@ -76,7 +88,8 @@ public final class SessionController extends AbstractController<SessionModel, Se
 
     private void addStreamTab(StreamModel streamModel) {
         StreamPanel streamPanel = new StreamPanel();
-        StreamController streamCtl = new StreamController(streamModel, streamPanel, networkController);
+        StreamController streamCtl = new StreamController(streamModel, streamPanel, networkController, connectionEngine, sessionExecutor);
+        streamCtl.setSynchronizedSendHandler(this::synchronizedSend);
         model.addStream(streamModel);
         streamControllers.add(streamCtl);
         view.addStreamTab(streamModel.getName(), streamPanel);
@@ -84,7 +97,70 @@ public final class SessionController extends AbstractController<SessionModel, Se
 
     private void removeStreamTab(int streamIndex) {
         model.removeStream(streamControllers.get(streamIndex).model);
-        streamControllers.remove(streamIndex);
+        streamControllers.remove(streamIndex).dispose();
+    }
+
+    // Sends the client request of every stream with synchronized send enabled, releasing their last bytes together.
+    // Each part is prepared on its stream's lane; the send starts once every stream has reported back
+    private void synchronizedSend() {
+        List<StreamController> pending = new ArrayList<>();
+        for (StreamController streamCtl : streamControllers) {
+            if (streamCtl.isSynchronizedSend()) pending.add(streamCtl);
+        }
+        if (pending.isEmpty()) return;
+        SynchronizedSend.Part[] prepared = new SynchronizedSend.Part[pending.size()];
+        int[] remaining = {pending.size()};
+        for (int i = 0; i < pending.size(); i++) {
+            int index = i;
+            StreamController streamCtl = pending.get(i);
+            streamCtl.setSynchronizedSendResult("waiting...");
+            streamCtl.prepareSynchronizedSend(SYNC_TAIL_BYTES, part -> {
+                prepared[index] = part;
+                if (part == null) streamCtl.setSynchronizedSendResult("");
+                if (--remaining[0] == 0) startSynchronizedSend(pending, prepared);
+            });
+        }
+    }
+
+    private void startSynchronizedSend(List<StreamController> pending, SynchronizedSend.Part[] prepared) {
+        List<StreamController> senders = new ArrayList<>();
+        List<SynchronizedSend.Part> parts = new ArrayList<>();
+        for (int i = 0; i < prepared.length; i++) {
+            if (prepared[i] == null) continue;
+            senders.add(pending.get(i));
+            parts.add(prepared[i]);
+        }
+        if (parts.isEmpty()) return;
+        connectionEngine.synchronizedSend(parts, SYNC_TAIL_BYTES).whenComplete((result, error) -> invokeLater(() -> {
+            if (error != null) {
+                String message = error.getCause() != null ? error.getCause().getMessage() : error.getMessage();
+                List<SynchronizedSend.Part> released = error instanceof SynchronizedSend.Failure
+                        ? ((SynchronizedSend.Failure) error).released() : List.of();
+                for (int i = 0; i < senders.size(); i++) {
+                    senders.get(i).setSynchronizedSendResult(released.contains(parts.get(i)) ? "sent, sync failed" : "sync failed, closed");
+                }
+                HTTPRaiderExtension.API.logging().logToError("Synchronized send failed after releasing " + released.size()
+                        + " of " + parts.size() + " streams: " + message);
+                return;
+            }
+            long first = Long.MAX_VALUE;
+            for (long t : result.releaseNanos()) first = Math.min(first, t);
+            for (int i = 0; i < senders.size(); i++) {
+                senders.get(i).setSynchronizedSendResult("+" + formatMicros(result.releaseNanos()[i] - first) + " / skew " + formatMicros(result.skewNanos()));
+            }
+            HTTPRaiderExtension.API.logging().logToOutput("Synchronized send of " + senders.size() + " streams released with a skew of " + formatMicros(result.skewNanos()));
+        }));
+    }
+
+    private static String formatMicros(long nanos) {
+        return String.format("%.1f us", nanos / 1000.0);
+    }
+
+    // Stops every connection and background task of the session
+    public void dispose() {
+        streamControllers.forEach(StreamController::dispose);
+        connectionEngine.shutdown();
+        sessionExecutor.shutdown();
     }
 
     private void saveAll() {
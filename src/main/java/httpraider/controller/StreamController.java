@@ -4,52 +4,79 @@ import burp.api.montoya.http.HttpService;
 import burp.api.montoya.ui.editor.HttpRequestEditor;
 import extension.HTTPRaiderExtension;
 import extension.ToolsManager;
+import httpraider.controller.engines.ConnectionEngine;
+import httpraider.controller.engines.ConnectionTimeline;
+import httpraider.controller.engines.Flood;
+import httpraider.controller.engines.SessionExecutor;
+import httpraider.controller.engines.StreamConnection;
+import httpraider.controller.engines.SynchronizedSend;
 import httpraider.controller.engines.TagEngine;
 import httpraider.model.ConnectionSettingsModel;
+import httpraider.model.QueueBuffer;
 import httpraider.model.StreamModel;
 import httpraider.model.network.ProxyModel;
+import httpraider.parser.ResponseFramer;
+import httpraider.parser.StreamingChain;
 import httpraider.view.components.ActionButton;
+import httpraider.view.components.ResponseNavigator;
 import httpraider.view.menuBars.ConnectionBar;
 import httpraider.view.panels.HttpEditorPanel;
 import httpraider.view.panels.HttpMultiEditorPanel;
 import httpraider.view.panels.StreamPanel;
 
-import javax.net.ssl.*;
 import javax.swing.*;
 import javax.swing.Timer;
 import java.awt.*;
 import java.awt.event.ActionEvent;
 import java.io.*;
-import java.net.InetSocketAddress;
-import java.net.Socket;
-import java.security.cert.X509Certificate;
 import java.util.*;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
 
 import static javax.swing.SwingUtilities.invokeLater;
 
 public final class StreamController extends AbstractController<StreamModel, StreamPanel> {
 
-    private Socket socket;
-    private BufferedInputStream in;
-    private OutputStream out;
+    private static final long MIN_FLUSH_DELAY_MS = 16;
+    private static final long MAX_FLUSH_DELAY_MS = 500;
+
+    private final ConnectionEngine connectionEngine;
+    private final SessionExecutor sessionExecutor;
+    private final SessionExecutor.Lane tasks;
+    private final SessionExecutor.Lane parsing;
+    private volatile StreamConnection connection;
+    private volatile StreamConnection warmConnection;
+    private volatile ConnectionTimeline timeline;
+    private final ResponseFramer responseFramer = new ResponseFramer();
+    private int responseIndex = -1;
     private volatile ConnectionBar.State state;
-    private java.util.concurrent.CountDownLatch connectedLatch = new java.util.concurrent.CountDownLatch(1);
-    private ByteArrayOutputStream response;
-    private final Object responseLock = new Object();
+    private final Timer updateTimer;
     private final ToolsManager toolsManager;
     private boolean tagsEnabled = false;
     private NetworkController networkController;
-    private Map<ProxyModel, HttpMultiEditorPanel> proxyEditors;
+    private volatile Map<ProxyModel, HttpMultiEditorPanel> proxyEditors;
+    private final StreamingChain streamingChain;
+    private final AtomicBoolean proxyEditorsRefreshQueued = new AtomicBoolean();
+    private Runnable synchronizedSendHandler;
 
-    public StreamController(StreamModel model, StreamPanel view, NetworkController networkController) {
+    public StreamController(StreamModel model, StreamPanel view, NetworkController networkController, ConnectionEngine connectionEngine, SessionExecutor sessionExecutor) {
         super(model, view);
+        this.connectionEngine = connectionEngine;
+        this.sessionExecutor = sessionExecutor;
+        this.tasks = sessionExecutor.newLane();
+        this.parsing = sessionExecutor.newLane();
         state = ConnectionBar.State.DISCONNECTED;
+        updateTimer = new Timer((int) MIN_FLUSH_DELAY_MS, e -> flushResponse());
+        updateTimer.setRepeats(false);
         updateFromModel();
         toolsManager = new ToolsManager(view, this);
         view.getConnectionBar().setSendActionListener(this::sendAction);
         view.getConnectionBar().setDisconnectActionListener(this::disconnectAction);
+        view.setResponseNavigationListener(this::navigateResponses);
         this.networkController = networkController;
+        this.streamingChain = new StreamingChain(networkController);
         setTestActionListener();
         resetView();
     }
@@ -72,14 +99,21 @@ public final class StreamController extends AbstractController<StreamModel, Stre
                 }
             }
             
-            for (ProxyModel proxyModel : proxyEditors.keySet()){
-                List<List<byte[]>> groups = httpraider.parser.ParserChainRunner.parseFinalGroupsForPanel(
-                        proxyModel,
-                        req,
-                        networkController
+            // One simulation for every shown proxy, off the EDT and after any live parsing already queued
+            byte[] payload = req;
+            List<ProxyModel> targets = new ArrayList<>(proxyEditors.keySet());
+            parsing.execute(() -> {
+                Map<ProxyModel, List<List<byte[]>>> results = httpraider.parser.ParserChainRunner.parseFinalGroupsForPanels(
+                        targets,
+                        payload,
+                        networkController,
+                        sessionExecutor
                 );
-                proxyEditors.get(proxyModel).addAll(groups);
-            }
+                runOnEDT(() -> results.forEach((proxyModel, groups) -> {
+                    HttpMultiEditorPanel editor = proxyEditors.get(proxyModel);
+                    if (editor != null) editor.addAll(groups);
+                }));
+            });
         });
     }
 
@@ -154,8 +188,8 @@ public final class StreamController extends AbstractController<StreamModel, Stre
 
     public void updateFromModel() {
         view.setClientRequest(model.getClientRequest());
-        view.setRequestQueue(model.getRequestQueue());
-        view.setResponseQueue(model.getResponseQueue());
+        view.showRequestQueue(model.getRequestQueue());
+        view.showResponseQueue(model.getResponseQueue());
         view.setBaseView();
         view.updateConnectionBar(model.getConnectionSettings().getHost(), model.getConnectionSettings().getPort(), model.getConnectionSettings().isTls());
     }
@@ -163,8 +197,6 @@ public final class StreamController extends AbstractController<StreamModel, Stre
     private void updateModelFromView() {
         updateConnectionSettingsModelFromView();
         model.setClientRequest(view.getClientRequest());
-        model.setRequestQueue(view.getRequestQueue());
-        model.setResponseQueue(view.getResponseQueue());
     }
 
     private void updateConnectionSettingsModelFromView() {
@@ -178,16 +210,84 @@ public final class StreamController extends AbstractController<StreamModel, Stre
         view.updateConnectionBar(connectionSettingsModel.getHost(), connectionSettingsModel.getPort(), connectionSettingsModel.isTls());
     }
 
+    public void setSynchronizedSendHandler(Runnable handler) {
+        this.synchronizedSendHandler = handler;
+    }
+
+    public boolean isSynchronizedSend() {
+        return view.getConnectionBar().isSyncSend();
+    }
+
+    // Connects like a regular send, then resolves the request on the stream's lane and pre-writes all but its last
+    // tailLength bytes there, after anything sent before it. onReady gets the part on the EDT, or null
+    void prepareSynchronizedSend(int tailLength, Consumer<SynchronizedSend.Part> onReady) {
+        openForSend();
+        StreamConnection current = connection;
+        if (current == null) {
+            onReady.accept(null);
+            return;
+        }
+        byte[] request = view.getClientRequest();
+        tasks.execute(() -> {
+            byte[] data = resolveRequest(request);
+            SynchronizedSend.Part part = null;
+            if (data != null && data.length > 0) {
+                part = new SynchronizedSend.Part(current, data);
+                SynchronizedSend.writeHead(part, tailLength);
+            }
+            SynchronizedSend.Part ready = part;
+            runOnEDT(() -> {
+                if (ready != null) warmUp();
+                onReady.accept(ready);
+            });
+        });
+    }
+
+    // Pipelines the client request count times or for durationMillis, whichever limit is set. Like a send, its tags
+    // are resolved on the stream's lane after anything sent before it; onStarted gets the flood on the EDT, or null
+    public void startFlood(long count, long durationMillis, Consumer<Flood> onStarted) {
+        openForSend();
+        StreamConnection current = connection;
+        if (current == null) {
+            onStarted.accept(null);
+            return;
+        }
+        byte[] request = view.getClientRequest();
+        tasks.execute(() -> {
+            byte[] data = resolveRequest(request);
+            Flood flood = data != null && data.length > 0
+                    ? current.flood(data, count, TimeUnit.MILLISECONDS.toNanos(durationMillis))
+                    : null;
+            runOnEDT(() -> onStarted.accept(flood));
+        });
+    }
+
+    void setSynchronizedSendResult(String text) {
+        view.getConnectionBar().setSyncResult(text);
+    }
+
     private void sendAction(ActionEvent e) {
-        if (view.getConnectionBar().isReset() || !isConnected()) {
+        if (synchronizedSendHandler != null && isSynchronizedSend()) {
+            synchronizedSendHandler.run();
+            return;
+        }
+        openForSend();
+        sendRequest();
+        warmUp();
+    }
+
+    private void openForSend() {
+        if (view.getConnectionBar().isReset()) {
+            disconnect();
+            if (!adoptWarmConnection()) connect();
+        } else if (!isConnected()) {
             disconnect();
             connect();
         }
-        sendRequest();
     }
 
     private boolean isConnected() {
-        return socket != null && state == ConnectionBar.State.CONNECTED;
+        return connection != null && state == ConnectionBar.State.CONNECTED;
     }
 
     private void sendRequest() {
@@ -195,51 +295,59 @@ public final class StreamController extends AbstractController<StreamModel, Stre
     }
 
     private void sendRequest(byte[] request) {
-        Thread writeThread = new Thread(() -> {
-            try {
-                if (!connectedLatch.await(8000, java.util.concurrent.TimeUnit.MILLISECONDS)) {
-                    return;
-                }
-                if (state != ConnectionBar.State.CONNECTED) {
-                    return;
-                }
-                if (tagsEnabled){
-                    int valid = TagEngine.validate(request);
-                    if (valid== TagEngine.CORRECT) out.write(TagEngine.resolve(request));
-                    else {
-                        runOnEDT(() -> view.setResponseQueue(("<!--ERROR procesing the tag at index: "+valid+" -->").getBytes()));
-                        disconnect();
-                        return;
-                    }
-                }
-                else out.write(request);
-                out.flush();
-                runOnEDT(() -> view.addRequestQueueBytes(tagsEnabled ? TagEngine.resolve(request) : request));
-            } catch (Exception ex) {
-                runOnEDT(() -> view.setRequestQueue("<!--ERROR SENDING REQUEST DATA-->" + Arrays.toString(ex.getStackTrace())));
-                disconnect();
-            } finally {
-                runOnEDT(this::updateModelFromView);
-            }
+        StreamConnection current = connection;
+        if (current == null) return;
+        // tag resolution can expand to megabytes, so it runs on the stream's lane in send order
+        tasks.execute(() -> {
+            byte[] data = resolveRequest(request);
+            if (data != null) current.write(data);
         });
-        writeThread.start();
+    }
+
+    private byte[] resolveRequest(byte[] request) {
+        if (!tagsEnabled) return request;
+        int valid = TagEngine.validate(request);
+        if (valid != TagEngine.CORRECT) {
+            byte[] note = ("<!--ERROR procesing the tag at index: " + valid + " -->").getBytes();
+            // frames are response queue offsets, so the framer moves past the note as the queue does
+            synchronized (responseFramer) {
+                model.getResponseQueue().append(note);
+                responseFramer.skip(note.length);
+            }
+            runOnEDT(this::flushResponse);
+            disconnect();
+            return null;
+        }
+        return TagEngine.resolve(request);
     }
 
     private void disconnectAction(ActionEvent e) {
+        discardWarmConnection();
+        disconnect();
+    }
+
+    public void dispose() {
+        tasks.cancel();
+        parsing.cancel();
+        discardWarmConnection();
         disconnect();
+        // after the final flush queued by disconnect
+        runOnEDT(() -> {
+            model.getRequestQueue().close();
+            model.getResponseQueue().close();
+        });
     }
 
     private void disconnect() {
         setState(ConnectionBar.State.DISCONNECTED);
-        try {
-            if (socket != null) {
-                socket.close();
-            }
-        } catch (IOException ignored) {
-        } finally {
-            socket = null;
-            in = null;
-            out = null;
+        StreamConnection current = connection;
+        connection = null;
+        if (current != null) {
+            current.close();
+            runOnEDT(() -> {
+                updateTimer.stop();
+                flushResponse();
+            });
         }
     }
 
@@ -250,109 +358,158 @@ public final class StreamController extends AbstractController<StreamModel, Stre
 
     private void connect() {
         setState(ConnectionBar.State.CONNECTING);
-        response = new ByteArrayOutputStream();
-        connectedLatch = new java.util.concurrent.CountDownLatch(1);
-        Thread thread = new Thread(() -> {
-            try {
-                String host = callOnEDT(() -> view.getConnectionBar().getHost());
-                int port = callOnEDT(() -> view.getConnectionBar().getPort());
-                boolean tls = callOnEDT(() -> view.getConnectionBar().isTLS());
-                if (tls) {
-                    Socket plainSocket = new Socket();
-                    plainSocket.connect(new InetSocketAddress(host, port), 3000);
-                    TrustManager[] trustAllCerts = new TrustManager[]{
-                            new X509TrustManager() {
-                                public X509Certificate[] getAcceptedIssuers() {
-                                    return null;
-                                }
-
-                                public void checkClientTrusted(X509Certificate[] certs, String authType) {
-                                }
-
-                                public void checkServerTrusted(X509Certificate[] certs, String authType) {
-                                }
-                            }
-                    };
-                    SSLContext sc = SSLContext.getInstance("TLS");
-                    sc.init(null, trustAllCerts, new java.security.SecureRandom());
-                    SSLSocketFactory sslSocketFactory = sc.getSocketFactory();
-                    SSLSocket sslSocket = (SSLSocket) sslSocketFactory.createSocket(plainSocket, host, port, true);
-                    sslSocket.setEnabledProtocols(new String[]{"TLSv1.2", "TLSv1.3"});
-                    sslSocket.setSoTimeout(6000);
-                    sslSocket.startHandshake();
-                    sslSocket.setSoTimeout(0);
-                    socket = sslSocket;
-                } else {
-                    socket = new Socket();
-                    socket.connect(new InetSocketAddress(host, port), 5000);
-                }
-                socket.setKeepAlive(true);
-                socket.setReceiveBufferSize(65538);
-                socket.setSendBufferSize(65538);
-                in = new BufferedInputStream(socket.getInputStream(), 65536);
-                out = socket.getOutputStream();
-                if (state == ConnectionBar.State.CONNECTING) {
-                    setState(ConnectionBar.State.CONNECTED);
-                    connectedLatch.countDown();
-                    startReading();
-                } else {
-                    socket = null;
-                    in = null;
-                    out = null;
-                }
-            } catch (Exception ex) {
-                socket = null;
-                in = null;
-                out = null;
-                setState(ConnectionBar.State.ERROR);
-            }
+        clearQueues();
+        String host = callOnEDT(() -> view.getConnectionBar().getHost());
+        int port = callOnEDT(() -> view.getConnectionBar().getPort());
+        boolean tls = callOnEDT(() -> view.getConnectionBar().isTLS());
+        connection = connectionEngine.connect(host, port, tls, new ConnectionListener());
+        timeline = connection.getTimeline();
+    }
+
+    // With "Reset connection" on, the next connection is opened while the current one is still receiving
+    private void warmUp() {
+        if (!view.getConnectionBar().isReset()) {
+            discardWarmConnection();
+            return;
+        }
+        StreamConnection warm = warmConnection;
+        if (warm != null && !warm.isClosed() && matchesConnectionBar(warm)) return;
+        discardWarmConnection();
+        warmConnection = connectionEngine.connect(view.getConnectionBar().getHost(), view.getConnectionBar().getPort(), view.getConnectionBar().isTLS(), new ConnectionListener());
+    }
+
+    private boolean adoptWarmConnection() {
+        StreamConnection warm = warmConnection;
+        warmConnection = null;
+        if (warm == null) return false;
+        if (warm.isClosed() || !matchesConnectionBar(warm)) {
+            warm.close();
+            return false;
+        }
+        setState(ConnectionBar.State.CONNECTING);
+        clearQueues();
+        connection = warm;
+        timeline = warm.getTimeline();
+        if (warm.isOpen()) setState(ConnectionBar.State.CONNECTED);
+        return true;
+    }
+
+    private void discardWarmConnection() {
+        StreamConnection warm = warmConnection;
+        warmConnection = null;
+        if (warm != null) warm.close();
+    }
+
+    private boolean matchesConnectionBar(StreamConnection c) {
+        return c.getHost().equals(view.getConnectionBar().getHost()) && c.getPort() == view.getConnectionBar().getPort() && c.isTls() == view.getConnectionBar().isTLS();
+    }
+
+    private void clearQueues() {
+        model.getRequestQueue().clear();
+        synchronized (responseFramer) {
+            model.getResponseQueue().clear();
+            responseFramer.reset();
+        }
+        parsing.execute(streamingChain::reset);
+        runOnEDT(() -> {
+            responseIndex = -1;
+            view.setResponseNavigation(-1, 0, 0);
         });
-        thread.start();
     }
 
-    private void startReading() {
-        SwingUtilities.invokeLater(() -> {
-            Timer updateTimer = new Timer(16, e -> {
-                int pos = view.getResponseQueueBytes().length;
-                view.setResponseQueue(response.toByteArray());
-                view.setResponseQueueCaretPosition(pos);
+    private void flushResponse() {
+        QueueBuffer response = model.getResponseQueue();
+        if (response.size() == response.flushedSize()) return;
+        view.setResponseQueueCaretPosition(view.appendResponseQueue(response));
+        view.setResponseNavigation(responseIndex, responseFramer.completeCount(), responseFramer.count());
+    }
+
+    private void navigateResponses(ActionEvent e) {
+        int count = responseFramer.count();
+        if (count == 0) return;
+        int index = ResponseNavigator.PREVIOUS.equals(e.getActionCommand()) ? responseIndex - 1 : responseIndex + 1;
+        responseIndex = Math.max(0, Math.min(count - 1, index));
+        int position = view.getResponseQueueEditorPosition(responseFramer.frame(responseIndex).start());
+        view.setResponseQueueCaretPosition(Math.max(0, position));
+        view.setResponseNavigation(responseIndex, responseFramer.completeCount(), count);
+    }
+
+    // Frames of the responses received on the current connection, in response queue offsets
+    public ResponseFramer getResponseFramer() {
+        return responseFramer;
+    }
+
+    // The editor is re-rendered on every flush, so bigger queues are flushed less often
+    private void scheduleResponseFlush() {
+        if (updateTimer.isRunning()) return;
+        long delay = Math.max(MIN_FLUSH_DELAY_MS, Math.min(MAX_FLUSH_DELAY_MS, model.getResponseQueue().size() / QueueBuffer.PAGE_SIZE));
+        updateTimer.setInitialDelay((int) delay);
+        updateTimer.start();
+    }
+
+    // Each proxy's view follows the live stream: only the bytes a proxy hasn't settled are parsed again, off the
+    // selector thread and in send order, and the views are redrawn once for however many writes landed meanwhile
+    private void parseSent(byte[] data) {
+        if (proxyEditors.isEmpty()) return;
+        parsing.execute(() -> {
+            streamingChain.feed(data);
+            if (proxyEditorsRefreshQueued.compareAndSet(false, true)) runOnEDT(this::refreshProxyEditors);
+        });
+    }
+
+    private void refreshProxyEditors() {
+        proxyEditorsRefreshQueued.set(false);
+        for (Map.Entry<ProxyModel, HttpMultiEditorPanel> entry : proxyEditors.entrySet()) {
+            entry.getValue().addAll(streamingChain.groupsFor(entry.getKey()));
+        }
+    }
+
+    // Callbacks arrive on the session's selector thread; events from a replaced connection are ignored
+    private final class ConnectionListener implements StreamConnection.Listener {
+
+        @Override
+        public void onOpen(StreamConnection c) {
+            if (c != connection || state != ConnectionBar.State.CONNECTING) return;
+            setState(ConnectionBar.State.CONNECTED);
+        }
+
+        @Override
+        public void onData(StreamConnection c, byte[] data, int offset, int length) {
+            if (c != connection) return;
+            synchronized (responseFramer) {
+                model.getResponseQueue().append(data, offset, length);
+                responseFramer.feed(data, offset, length);
+            }
+            runOnEDT(StreamController.this::scheduleResponseFlush);
+        }
+
+        @Override
+        public void onSent(StreamConnection c, byte[] data) {
+            if (c != connection) return;
+            model.getRequestQueue().append(data);
+            runOnEDT(() -> {
+                view.appendRequestQueue(model.getRequestQueue());
+                updateModelFromView();
             });
-            updateTimer.setRepeats(false);
-            //view.setResponseHTTPsearch();
-            Thread readThread = new Thread(() -> {
-                byte[] buffer = new byte[8192];
-                int bytesRead;
-                try {
-                    while (socket != null && state == ConnectionBar.State.CONNECTED && (bytesRead = in.read(buffer)) != -1) {
-                        synchronized (responseLock) {
-                            response.write(buffer, 0, bytesRead);
-                        }
-                        runOnEDT(() -> {
-                            if (updateTimer.isRunning()) {
-                                updateTimer.restart();
-                            } else {
-                                updateTimer.start();
-                            }
-                        });
-                    }
-                } catch (IOException ignored) {
-                } finally {
-                    synchronized (responseLock) {
-                        if (response.size() > 0) {
-                            int pos = view.getResponseQueueBytes().length;
-                            runOnEDT(() -> {
-                                view.setResponseQueue(response.toByteArray());
-                                view.setResponseQueueCaretPosition(pos);
-                            });
-                        }
-                    }
-                    if (state == ConnectionBar.State.CONNECTED) {
-                        disconnect();
-                    }
-                }
+            parseSent(data);
+        }
+
+        @Override
+        public void onClosed(StreamConnection c, IOException cause) {
+            if (c == warmConnection) warmConnection = null;
+            if (c != connection) return;
+            responseFramer.close();
+            runOnEDT(() -> {
+                updateTimer.stop();
+                flushResponse();
             });
-            readThread.start();
-        });
+            connection = null;
+            if (state == ConnectionBar.State.CONNECTING) {
+                setState(ConnectionBar.State.ERROR);
+            } else if (state == ConnectionBar.State.CONNECTED) {
+                setState(ConnectionBar.State.DISCONNECTED);
+            }
+        }
     }
 
     private void runOnEDT(Runnable r) {
@@ -385,6 +542,11 @@ public final class StreamController extends AbstractController<StreamModel, Stre
         return ref.get();
     }
 
+    // Timeline of the current connection, or of the last one once it has closed
+    public ConnectionTimeline getTimeline() {
+        return timeline;
+    }
+
     public byte[] getRequest(){
         return view.getClientRequest();
     }
@@ -0,0 +1,76 @@
+package httpraider.controller.engines;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Objects;
+
+// Raw request bytes as scripts see them: read in place, byte by byte or as ISO-8859-1 text decoded only when asked
+// for. A script can also hand a view (or a slice of one) back as an output, and its bytes go out untouched.
+public final class ByteView {
+
+    private final byte[] data;
+    private final int from;
+    private final int to;
+    private String text;
+
+    public ByteView(byte[] data) {
+        this(data, 0, data.length);
+    }
+
+    public ByteView(byte[] data, int from, int to) {
+        this.data = data;
+        this.from = from;
+        this.to = to;
+    }
+
+    // 'view.length' in scripts
+    public int getLength() {
+        return to - from;
+    }
+
+    // 0-255
+    public int byteAt(int index) {
+        Objects.checkIndex(index, getLength());
+        return data[from + index] & 0xff;
+    }
+
+    public String text() {
+        if (text == null) text = new String(data, from, to - from, StandardCharsets.ISO_8859_1);
+        return text;
+    }
+
+    public String text(int start, int end) {
+        Objects.checkFromToIndex(start, end, getLength());
+        return new String(data, from + start, end - start, StandardCharsets.ISO_8859_1);
+    }
+
+    public int indexOf(String value) {
+        return indexOf(value, 0);
+    }
+
+    // Where the ISO-8859-1 bytes of value start at or after index, or -1
+    public int indexOf(String value, int index) {
+        outer:
+        for (int i = from + Math.max(index, 0); i <= to - value.length(); i++) {
+            for (int j = 0; j < value.length(); j++) {
+                if ((data[i + j] & 0xff) != value.charAt(j)) continue outer;
+            }
+            return i - from;
+        }
+        return -1;
+    }
+
+    public ByteView slice(int start, int end) {
+        Objects.checkFromToIndex(start, end, getLength());
+        return new ByteView(data, from + start, from + end);
+    }
+
+    public byte[] toByteArray() {
+        return Arrays.copyOfRange(data, from, to);
+    }
+
+    @Override
+    public String toString() {
+        return text();
+    }
+}
@@ -0,0 +1,199 @@
+package httpraider.controller.engines;
+
+import javax.net.ssl.*;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+// Session-wide non-blocking I/O engine: one selector thread drives every stream connection of a session
+public final class ConnectionEngine {
+
+    private static final long SELECT_TIMEOUT_MS = 250;
+    private static final long SYNC_SELECT_TIMEOUT_MS = 1;
+    private static final long CONNECT_TIMEOUT_MS = 5000;
+    private static final long HANDSHAKE_TIMEOUT_MS = 6000;
+    private static final int READ_BUFFER_SIZE = 65536;
+    private static final String[] TLS_PROTOCOLS = {"TLSv1.2", "TLSv1.3"};
+    private static final int TLS_SESSION_CACHE_SIZE = 256;
+    private static final int TLS_SESSION_TIMEOUT_S = 3600;
+    private static final TrustManager[] TRUST_ALL = new TrustManager[]{
+            new X509TrustManager() {
+                public X509Certificate[] getAcceptedIssuers() {
+                    return new X509Certificate[0];
+                }
+
+                public void checkClientTrusted(X509Certificate[] certs, String authType) {
+                }
+
+                public void checkServerTrusted(X509Certificate[] certs, String authType) {
+                }
+            }
+    };
+
+    private final String name;
+    private final SessionExecutor executor;
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    private final ByteBuffer readBuffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+    private final List<SynchronizedSend> synchronizedSends = new ArrayList<>();
+    // replaced by each start(); a selector thread only ever touches the one it was started with
+    private volatile Selector selector;
+    private Thread selectorThread;
+    private SSLContext sslContext;
+    private volatile boolean running;
+
+    public ConnectionEngine(String name, SessionExecutor executor) {
+        this.name = name;
+        this.executor = executor;
+    }
+
+    public StreamConnection connect(String host, int port, boolean tls, StreamConnection.Listener listener) {
+        StreamConnection connection = new StreamConnection(this, host, port, tls, listener);
+        start();
+        // Name resolution blocks, so it is kept off the selector thread
+        try {
+            executor.execute(() -> {
+                InetSocketAddress address = new InetSocketAddress(host, port);
+                execute(() -> open(connection, address));
+            });
+        } catch (RejectedExecutionException e) {
+            connection.fail(new IOException("Session is closed"));
+        }
+        return connection;
+    }
+
+    // Every part must use a connection of this engine; completes once the last bytes have been released
+    public CompletableFuture<SynchronizedSend.Result> synchronizedSend(List<SynchronizedSend.Part> parts, int tailLength) {
+        SynchronizedSend send = new SynchronizedSend(parts, tailLength);
+        start();
+        execute(() -> synchronizedSends.add(send));
+        return send.result();
+    }
+
+    public void shutdown() {
+        synchronized (this) {
+            if (!running) return;
+            running = false;
+        }
+        selector.wakeup();
+    }
+
+    void execute(Runnable task) {
+        tasks.add(task);
+        Selector current = selector;
+        if (Thread.currentThread() != selectorThread && current != null) current.wakeup();
+    }
+
+    ByteBuffer readBuffer() {
+        return readBuffer;
+    }
+
+    private synchronized void start() {
+        if (running) return;
+        Selector opened;
+        try {
+            opened = Selector.open();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        selector = opened;
+        running = true;
+        selectorThread = new Thread(() -> run(opened), name + "-selector");
+        selectorThread.setDaemon(true);
+        selectorThread.start();
+    }
+
+    private void open(StreamConnection connection, InetSocketAddress address) {
+        if (connection.isClosed()) return;
+        SocketChannel channel = null;
+        try {
+            if (address.isUnresolved()) throw new IOException("Unknown host: " + address.getHostString());
+            channel = SocketChannel.open();
+            channel.configureBlocking(false);
+            SSLEngine ssl = connection.isTls() ? createSSLEngine(connection.getHost(), connection.getPort()) : null;
+            boolean connected = channel.connect(address);
+            SelectionKey key = channel.register(selector, connected ? SelectionKey.OP_READ : SelectionKey.OP_CONNECT, connection);
+            long timeout = connection.isTls() ? CONNECT_TIMEOUT_MS + HANDSHAKE_TIMEOUT_MS : CONNECT_TIMEOUT_MS;
+            connection.register(channel, key, ssl, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout));
+            if (connected) connection.connected();
+        } catch (Exception ex) {
+            if (channel != null) {
+                try {
+                    channel.close();
+                } catch (IOException ignored) {
+                }
+            }
+            connection.fail(ex instanceof IOException ? (IOException) ex : new IOException(ex));
+        }
+    }
+
+    // A start() racing with shutdown() may replace the selector before this thread has stopped; it then stops and
+    // closes only its own, and leaves the queued work to the new thread
+    private void run(Selector selector) {
+        try {
+            while (running && selector == this.selector) {
+                selector.select(synchronizedSends.isEmpty() ? SELECT_TIMEOUT_MS : SYNC_SELECT_TIMEOUT_MS);
+                Runnable task;
+                while ((task = tasks.poll()) != null) task.run();
+                for (SelectionKey key : selector.selectedKeys()) {
+                    ((StreamConnection) key.attachment()).handle(key);
+                }
+                selector.selectedKeys().clear();
+                long now = System.nanoTime();
+                for (SelectionKey key : selector.keys()) {
+                    ((StreamConnection) key.attachment()).checkDeadline(now);
+                }
+                synchronizedSends.removeIf(send -> send.poll(now));
+            }
+        } catch (IOException | ClosedSelectorException ignored) {
+        } finally {
+            for (SelectionKey key : selector.keys()) {
+                ((StreamConnection) key.attachment()).fail(null);
+            }
+            synchronized (this) {
+                if (selector == this.selector) {
+                    tasks.clear();
+                    synchronizedSends.forEach(SynchronizedSend::cancel);
+                    synchronizedSends.clear();
+                }
+            }
+            try {
+                selector.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    // Engines created with the same host and port share the client session cache, so reconnects resume the TLS session
+    private SSLEngine createSSLEngine(String host, int port) throws GeneralSecurityException {
+        SSLEngine engine = sslContext().createSSLEngine(host, port);
+        engine.setUseClientMode(true);
+        engine.setEnabledProtocols(TLS_PROTOCOLS);
+        return engine;
+    }
+
+    private SSLContext sslContext() throws GeneralSecurityException {
+        if (sslContext == null) {
+            SSLContext context = SSLContext.getInstance("TLS");
+            context.init(null, TRUST_ALL, new SecureRandom());
+            context.getClientSessionContext().setSessionCacheSize(TLS_SESSION_CACHE_SIZE);
+            context.getClientSessionContext().setSessionTimeout(TLS_SESSION_TIMEOUT_S);
+            sslContext = context;
+        }
+        return sslContext;
+    }
+}
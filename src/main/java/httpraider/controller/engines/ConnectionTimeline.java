@@ -0,0 +1,69 @@
+package httpraider.controller.engines;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Nanosecond timestamps of everything that happened on one stream connection, recorded on the selector thread
+public final class ConnectionTimeline {
+
+    public enum EventType { CONNECT_START, TCP_CONNECTED, TLS_HANDSHAKE, WRITE_FLUSHED, FIRST_BYTE, READ, CLOSED }
+
+    public record Event(EventType type, long nanos, int bytes) {}
+
+    private static final int MAX_EVENTS = 100_000;
+
+    private final List<Event> events = new ArrayList<>();
+    private int dropped;
+    private boolean firstByteSeen;
+
+    ConnectionTimeline() {
+        record(EventType.CONNECT_START, 0);
+    }
+
+    synchronized void record(EventType type, int bytes) {
+        if (type == EventType.READ && !firstByteSeen) {
+            type = EventType.FIRST_BYTE;
+            firstByteSeen = true;
+        }
+        // the closing event is always kept so the timeline has an end
+        if (events.size() >= MAX_EVENTS && type != EventType.CLOSED) {
+            dropped++;
+            return;
+        }
+        events.add(new Event(type, System.nanoTime(), bytes));
+    }
+
+    public synchronized List<Event> events() {
+        return new ArrayList<>(events);
+    }
+
+    public synchronized int size() {
+        return events.size();
+    }
+
+    public synchronized int droppedEvents() {
+        return dropped;
+    }
+
+    public synchronized long startNanos() {
+        return events.get(0).nanos();
+    }
+
+    // Time of the first event of the given type, or -1 if it has not happened
+    public synchronized long nanosOf(EventType type) {
+        for (Event event : events) {
+            if (event.type() == type) return event.nanos();
+        }
+        return -1;
+    }
+
+    // Time of the last write that went out before the first response byte, or -1
+    public synchronized long lastWriteBeforeFirstByte() {
+        long last = -1;
+        for (Event event : events) {
+            if (event.type() == EventType.FIRST_BYTE) break;
+            if (event.type() == EventType.WRITE_FLUSHED) last = event.nanos();
+        }
+        return last;
+    }
+}
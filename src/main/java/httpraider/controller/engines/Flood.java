@@ -0,0 +1,103 @@
+package httpraider.controller.engines;
+
+import java.nio.ByteBuffer;
+
+// One request written back to back on a connection, a bounded batch of copies per gathered write
+public final class Flood {
+
+    private static final int BATCH_BYTES = 256 * 1024;
+    private static final int MAX_BATCH = 1024;
+
+    private final int requestLength;
+    private final long count;
+    private final long durationNanos;
+    private final ByteBuffer[] batch;
+    private int batchStart;
+    private int batchEnd;
+    private long queued;
+    private long startNanos;
+
+    private volatile long requestsSent;
+    private volatile long bytesSent;
+    private volatile long firstWriteNanos;
+    private volatile long endNanos;
+    private volatile boolean stopRequested;
+    private volatile boolean finished;
+
+    // count <= 0 means no limit on the number of requests, durationNanos <= 0 means no time limit
+    Flood(byte[] request, long count, long durationNanos) {
+        this.requestLength = request.length;
+        this.count = count;
+        this.durationNanos = durationNanos;
+        int size = (int) Math.max(1, Math.min(MAX_BATCH, BATCH_BYTES / Math.max(1, request.length)));
+        if (count > 0) size = (int) Math.min(size, count);
+        batch = new ByteBuffer[size];
+        for (int i = 0; i < size; i++) batch[i] = ByteBuffer.wrap(request);
+    }
+
+    public long getRequestsSent() { return requestsSent; }
+    public long getBytesSent() { return bytesSent; }
+    public int getRequestLength() { return requestLength; }
+    public boolean isFinished() { return finished; }
+
+    public long getElapsedNanos() {
+        long start = firstWriteNanos;
+        if (start == 0) return 0;
+        return (finished ? endNanos : System.nanoTime()) - start;
+    }
+
+    public void stop() {
+        stopRequested = true;
+    }
+
+    // ---------------------------------------------------------------------
+    // Everything below runs on the engine's selector thread
+    // ---------------------------------------------------------------------
+
+    // Returns false once the flood is over and nothing of the current batch is left to write
+    boolean refill(long now) {
+        if (batchStart < batchEnd) return true;
+        if (startNanos == 0) startNanos = now;
+        boolean done = stopRequested
+                || (count > 0 && queued >= count)
+                || (durationNanos > 0 && now - startNanos >= durationNanos);
+        if (done) return false;
+        int n = (int) (count > 0 ? Math.min(batch.length, count - queued) : batch.length);
+        for (int i = 0; i < n; i++) batch[i].clear();
+        batchStart = 0;
+        batchEnd = n;
+        queued += n;
+        return true;
+    }
+
+    ByteBuffer[] buffers() { return batch; }
+    int offset() { return batchStart; }
+    int length() { return batchEnd - batchStart; }
+
+    boolean hasPendingBatch() {
+        return batchStart < batchEnd;
+    }
+
+    // Whether a copy has been partly written, so nothing else may be written until it's done
+    boolean midRequest() {
+        return batchStart < batchEnd && batch[batchStart].position() > 0;
+    }
+
+    void progress(long bytes) {
+        if (bytes <= 0) return;
+        if (firstWriteNanos == 0) firstWriteNanos = System.nanoTime();
+        bytesSent += bytes;
+        long sent = requestsSent;
+        while (batchStart < batchEnd && !batch[batchStart].hasRemaining()) {
+            batchStart++;
+            sent++;
+        }
+        requestsSent = sent;
+    }
+
+    void finish() {
+        if (finished) return;
+        endNanos = System.nanoTime();
+        finished = true;
+    }
+}
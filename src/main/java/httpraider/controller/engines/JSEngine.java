@@ -1,25 +1,130 @@
 package httpraider.controller.engines;
 
+import org.mozilla.javascript.CompilerEnvirons;
 import org.mozilla.javascript.Context;
+import org.mozilla.javascript.ContextFactory;
+import org.mozilla.javascript.Function;
+import org.mozilla.javascript.NativeObject;
+import org.mozilla.javascript.Node;
+import org.mozilla.javascript.Parser;
+import org.mozilla.javascript.Script;
 import org.mozilla.javascript.Scriptable;
+import org.mozilla.javascript.ScriptableObject;
+import org.mozilla.javascript.ast.AstRoot;
+import org.mozilla.javascript.ast.FunctionNode;
 
+import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.function.Supplier;
 
 public final class JSEngine {
 
+    // Compiled scripts by name and source, least recently used dropped first; the same rule or parser script runs
+    // for every request of every simulation, so it is parsed and compiled once and each run only binds its inputs
+    private static final int MAX_SCRIPTS = 256;
+    private static final Map<String, Script> SCRIPTS = new LinkedHashMap<>(64, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Script> eldest) {
+            return size() > MAX_SCRIPTS;
+        }
+    };
+
+    // Every call may run this many instructions and this long before it's stopped, so a script stuck in a loop
+    // can't hang a simulation; both can be set with system properties or the setters below
+    private static volatile long instructionBudget = Long.getLong("httpraider.js.instructionBudget", 50_000_000L);
+    private static volatile long timeBudgetMillis = Long.getLong("httpraider.js.timeBudgetMillis", 5_000L);
+    // How many instructions run between budget checks
+    private static final int OBSERVE_EVERY = 10_000;
+
+    private static final ContextFactory FACTORY = new BudgetedContextFactory();
+    // Contexts no call is using, re-entered by whichever thread calls next instead of made anew. They are kept here
+    // rather than per thread so none stays attached to a Burp thread after an unload, and virtual threads share them.
+    private static final int MAX_IDLE_CONTEXTS = Math.max(4, Runtime.getRuntime().availableProcessors() * 2);
+    private static final Deque<Context> IDLE_CONTEXTS = new ConcurrentLinkedDeque<>();
+
+    // The standard library, built once and sealed so every thread can share it; each call gets an empty scope on
+    // top of it for its inputs and whatever the script defines
+    private static final ScriptableObject SHARED_SCOPE;
+
+    static {
+        Context ctx = FACTORY.enterContext();
+        try {
+            SHARED_SCOPE = ctx.initStandardObjects(null, true);
+        } finally {
+            Context.exit();
+        }
+    }
+
     private JSEngine() {}
 
+    public static void setInstructionBudget(long instructions) {
+        instructionBudget = instructions;
+    }
+
+    public static void setTimeBudgetMillis(long millis) {
+        timeBudgetMillis = millis;
+    }
+
+    // Enters an idle Context with a fresh budget for the call; every enter is paired with exit
+    private static Context enter() {
+        Context idle = IDLE_CONTEXTS.pollFirst();
+        Context ctx = FACTORY.enterContext(idle);
+        // a call already running on this thread keeps its own Context
+        if (idle != null && idle != ctx) IDLE_CONTEXTS.offerFirst(idle);
+        Budget budget = (Budget) ctx.getThreadLocal(Budget.class);
+        if (budget == null) {
+            budget = new Budget();
+            ctx.putThreadLocal(Budget.class, budget);
+        }
+        budget.instructions = 0;
+        budget.deadline = System.nanoTime() + timeBudgetMillis * 1_000_000L;
+        return ctx;
+    }
+
+    private static void exit() {
+        Context ctx = Context.getCurrentContext();
+        Context.exit();
+        if (Context.getCurrentContext() == null && IDLE_CONTEXTS.size() < MAX_IDLE_CONTEXTS) IDLE_CONTEXTS.offerFirst(ctx);
+    }
+
+    private static CallScope newScope(Context ctx) {
+        CallScope scope = new CallScope();
+        scope.setPrototype(SHARED_SCOPE);
+        scope.setParentScope(null);
+        return scope;
+    }
+
+    private static Script compile(Context ctx, String source, String name) {
+        String key = name + '\0' + source;
+        synchronized (SCRIPTS) {
+            Script script = SCRIPTS.get(key);
+            if (script != null) return script;
+        }
+        // compiled outside the lock; a script that doesn't compile throws here just as evaluateString would
+        Script script = ctx.compileString(source, name, 1, null);
+        synchronized (SCRIPTS) {
+            SCRIPTS.put(key, script);
+        }
+        return script;
+    }
+
+    // Supplier inputs are only worked out if the script reads them
     private static void run(String script, Map<String, Object> inputs, Map<String, Object> outputs) {
-        Context ctx = Context.enter();
+        Context ctx = enter();
         try {
-            Scriptable scope = ctx.initStandardObjects();
+            CallScope scope = newScope(ctx);
             for (Map.Entry<String, Object> e : inputs.entrySet()) {
+                if (e.getValue() instanceof Supplier) {
+                    scope.putLazy(e.getKey(), (Supplier<?>) e.getValue());
+                    continue;
+                }
                 Object jsObj = Context.javaToJS(e.getValue(), scope);
-                org.mozilla.javascript.ScriptableObject.putProperty(scope, e.getKey(), jsObj);
+                ScriptableObject.putProperty(scope, e.getKey(), jsObj);
             }
-            ctx.evaluateString(scope, script, "script", 1, null);
+            compile(ctx, script, "script").exec(ctx, scope);
             for (String key : outputs.keySet()) {
-                Object value = org.mozilla.javascript.ScriptableObject.getProperty(scope, key);
+                Object value = ScriptableObject.getProperty(scope, key);
                 if (value == Scriptable.NOT_FOUND) {
                     outputs.put(key, null);
                 } else if (value instanceof Boolean) {
@@ -39,7 +144,7 @@ public final class JSEngine {
         } catch (Exception ex) {
             System.out.println(ex);
         } finally {
-            Context.exit();
+            exit();
         }
     }
 
@@ -67,11 +172,17 @@ public final class JSEngine {
         return result.toString();
     }
 
+    // headers and buffer are also there as byte views, headersView and bufferView; the strings are decoded only if
+    // the script reads them. An output may be a string (ISO-8859-1) or a view.
     public static byte[][] runEndHeaderScript(byte[] headers, byte[] buffer, String script) {
         try {
             Map<String, Object> in = new HashMap<>();
-            in.put("headers", new String(headers, "ISO-8859-1"));
-            in.put("buffer", new String(buffer, "ISO-8859-1"));
+            ByteView headersView = new ByteView(headers);
+            ByteView bufferView = new ByteView(buffer);
+            in.put("headers", (Supplier<String>) headersView::text);
+            in.put("buffer", (Supplier<String>) bufferView::text);
+            in.put("headersView", headersView);
+            in.put("bufferView", bufferView);
             Map<String, Object> out = new HashMap<>();
             out.put("outHeaders", null);
             out.put("outBuffer", null);
@@ -79,19 +190,22 @@ public final class JSEngine {
             if (script == null || script.trim().isEmpty()) throw new IllegalArgumentException("The script is empty or null");
             run(script, in, out);
 
-            byte[] outHeaders = out.get("outHeaders") == null ? "".getBytes() : out.get("outHeaders").toString().getBytes();
-            byte[] outPayload = out.get("outBuffer") == null ? "".getBytes() : out.get("outBuffer").toString().getBytes();
+            byte[] outHeaders = toBytes(out.get("outHeaders"));
+            byte[] outPayload = toBytes(out.get("outBuffer"));
             return new byte[][] { outHeaders, outPayload };
         } catch (Exception e) {
             return new byte[][] { headers, buffer };
         }
     }
 
+    // headerBlock is also there as headerBlockView, and only decoded if the script reads it
     public static List<String> runSplitHeaderScript(List<String> headerLines, byte[] headers, String script) {
         try {
             Map<String, Object> in = new HashMap<>();
+            ByteView headerBlockView = new ByteView(headers);
             in.put("headerLines", headerLines.toArray(new String[0]));
-            in.put("headerBlock", new String(headers, "ISO-8859-1"));
+            in.put("headerBlock", (Supplier<String>) headerBlockView::text);
+            in.put("headerBlockView", headerBlockView);
             Map<String, Object> out = new HashMap<>();
             out.put("outHeaderLines", null);
 
@@ -118,11 +232,21 @@ public final class JSEngine {
     }
 
     public static byte[][] runBodyLenScript(List<String> headerLines, byte[] body, byte[] buffer, String script) {
+        return runBodyLenScript(headerLines, body, new ByteView(buffer), script);
+    }
+
+    // body and buffer are also there as bodyView and bufferView; the strings are decoded only if the script reads
+    // them, so a large buffer is never copied for a script that doesn't. An output may be a string (ISO-8859-1) or
+    // a view.
+    public static byte[][] runBodyLenScript(List<String> headerLines, byte[] body, ByteView buffer, String script) {
         try {
             Map<String, Object> in = new HashMap<>();
+            ByteView bodyView = new ByteView(body);
             in.put("headerLines", headerLines.toArray(new String[0]));
-            in.put("body", new String(body, "ISO-8859-1"));
-            in.put("buffer", new String(buffer, "ISO-8859-1"));
+            in.put("body", (Supplier<String>) bodyView::text);
+            in.put("buffer", (Supplier<String>) buffer::text);
+            in.put("bodyView", bodyView);
+            in.put("bufferView", buffer);
             Map<String, Object> out = new HashMap<>();
             out.put("outBody", null);
             out.put("outBuffer", null);
@@ -130,85 +254,239 @@ public final class JSEngine {
             if (script == null || script.trim().isEmpty()) throw new IllegalArgumentException("The script is empty or null");
             run(script, in, out);
 
-            byte[] outBody = out.get("outBody") == null ? "".getBytes() : out.get("outBody").toString().getBytes();
-            byte[] outBuffer = out.get("outBuffer") == null ? "".getBytes() : out.get("outBuffer").toString().getBytes();
+            byte[] outBody = toBytes(out.get("outBody"));
+            byte[] outBuffer = toBytes(out.get("outBuffer"));
             return new byte[][] { outBody, outBuffer };
         } catch (Exception e) {
-            return new byte[][] { body, buffer };
+            return new byte[][] { body, buffer.toByteArray() };
         }
     }
 
+    private static byte[] toBytes(Object output) {
+        if (output == null) return new byte[0];
+        if (output instanceof ByteView) return ((ByteView) output).toByteArray();
+        if (output instanceof byte[]) return (byte[]) output;
+        return output.toString().getBytes(StandardCharsets.ISO_8859_1);
+    }
+
     public static Object runJsBooleanRule(String js, String headers, String body) {
         // Provide input variables 'headers' and 'body', expect 'result' or 'output' boolean as output
-        org.mozilla.javascript.Context ctx = org.mozilla.javascript.Context.enter();
+        Context ctx = enter();
         try {
-            org.mozilla.javascript.Scriptable scope = ctx.initStandardObjects();
+            Scriptable scope = newScope(ctx);
             scope.put("headers", scope, headers);
             scope.put("body", scope, body);
-            ctx.evaluateString(scope, js, "rule", 1, null);
-            Object result = org.mozilla.javascript.ScriptableObject.getProperty(scope, "result");
-            if (result == org.mozilla.javascript.Scriptable.NOT_FOUND) {
-                result = org.mozilla.javascript.ScriptableObject.getProperty(scope, "output");
+            compile(ctx, js, "rule").exec(ctx, scope);
+            Object result = ScriptableObject.getProperty(scope, "result");
+            if (result == Scriptable.NOT_FOUND) {
+                result = ScriptableObject.getProperty(scope, "output");
             }
             if (result instanceof Boolean) return (Boolean) result;
             if (result instanceof String) return Boolean.parseBoolean((String) result);
             return false;
         } finally {
-            org.mozilla.javascript.Context.exit();
+            exit();
         }
     }
 
-    public static boolean runFirewallRule(String js, String input) {
-        org.mozilla.javascript.Context ctx = org.mozilla.javascript.Context.enter();
+    // Compiles a firewall rule once; each test runs it in a fresh scope with 'input' or the 'headers' array set.
+    // A rule opts into batches by defining a top-level function batch(inputs) instead: it gets every request's
+    // input (strings, or header arrays) in one call and returns one result per input, in order.
+    public static FirewallScript compileFirewallRule(String js) {
+        Context ctx = enter();
         try {
-            org.mozilla.javascript.Scriptable scope = ctx.initStandardObjects();
-            // Set up the input variable
-            scope.put("input", scope, input);
-            
-            // Wrap the JS code to ensure it returns a value
-            String wrappedJs = "(function() { " + js + " })()";
-            Object result = ctx.evaluateString(scope, wrappedJs, "firewall", 1, null);
-            
-            // Direct return value
-            if (result instanceof Boolean) return (Boolean) result;
-            if (result instanceof String) return Boolean.parseBoolean((String) result);
-            if (result instanceof Number) return ((Number) result).intValue() != 0;
-            
-            return false;
+            if (js != null && declaresBatch(ctx, js)) {
+                return new FirewallScript(compile(ctx, js, "firewall"), true);
+            }
+            return new FirewallScript(compile(ctx, "(function() { " + js + " })()", "firewall"), false);
         } catch (Exception e) {
-            // If evaluation fails, don't block the request
+            // A rule that doesn't compile never blocks
             System.err.println("Firewall rule evaluation error: " + e.getMessage());
-            return false;
+            return new FirewallScript(null, false);
         } finally {
-            org.mozilla.javascript.Context.exit();
+            exit();
         }
     }
 
-    public static boolean runFirewallRuleArray(String js, String[] headers) {
-        org.mozilla.javascript.Context ctx = org.mozilla.javascript.Context.enter();
+    // Whether the rule parses as a script of its own that declares function batch at the top level. A per-request
+    // rule returns from the top level, so it doesn't parse unwrapped even when it has a helper of that name.
+    private static boolean declaresBatch(Context ctx, String js) {
+        CompilerEnvirons env = new CompilerEnvirons();
+        env.initFromContext(ctx);
+        AstRoot root;
         try {
-            org.mozilla.javascript.Scriptable scope = ctx.initStandardObjects();
-            // Convert array to JS array
-            Object jsHeaders = Context.javaToJS(headers, scope);
-            scope.put("headers", scope, jsHeaders);
-            
-            // Wrap the JS code to ensure it returns a value
-            String wrappedJs = "(function() { " + js + " })()";
-            Object result = ctx.evaluateString(scope, wrappedJs, "firewall", 1, null);
-            
-            // Direct return value
+            root = new Parser(env).parse(js, "firewall", 1);
+        } catch (RuntimeException e) {
+            return false;
+        }
+        for (Node node : root) {
+            if (node instanceof FunctionNode && ((FunctionNode) node).getFunctionType() == FunctionNode.FUNCTION_STATEMENT
+                    && "batch".equals(((FunctionNode) node).getName())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public static final class FirewallScript {
+
+        private final Script script;
+        private final boolean batch;
+
+        private FirewallScript(Script script, boolean batch) {
+            this.script = script;
+            this.batch = batch;
+        }
+
+        public boolean isBatch() {
+            return batch;
+        }
+
+        public boolean test(String input) {
+            if (batch) return testAll(new Object[]{input})[0];
+            return run("input", input, "Firewall rule evaluation error: ");
+        }
+
+        public boolean testHeaders(String[] headers) {
+            if (batch) return testAll(new Object[]{headers})[0];
+            return run("headers", headers, "Firewall rule array evaluation error: ");
+        }
+
+        // One result per input, each a String or a String[] of header lines; a rule without batch() runs per input
+        public boolean[] testAll(Object[] inputs) {
+            boolean[] blocked = new boolean[inputs.length];
+            if (!batch) {
+                for (int i = 0; i < inputs.length; i++) {
+                    blocked[i] = inputs[i] instanceof String[] ? testHeaders((String[]) inputs[i]) : test((String) inputs[i]);
+                }
+                return blocked;
+            }
+            if (script == null || inputs.length == 0) return blocked;
+            Context ctx = enter();
+            try {
+                Scriptable scope = newScope(ctx);
+                script.exec(ctx, scope);
+                Object function = ScriptableObject.getProperty(scope, "batch");
+                if (!(function instanceof Function)) return blocked;
+                Object[] elements = new Object[inputs.length];
+                for (int i = 0; i < inputs.length; i++) {
+                    elements[i] = inputs[i] instanceof String ? inputs[i] : Context.javaToJS(inputs[i], scope);
+                }
+                Object results = ((Function) function).call(ctx, scope, scope, new Object[]{ctx.newArray(scope, elements)});
+                if (!(results instanceof Scriptable)) return blocked;
+                for (int i = 0; i < inputs.length; i++) {
+                    blocked[i] = isTrue(ScriptableObject.getProperty((Scriptable) results, i));
+                }
+                return blocked;
+            } catch (Exception e) {
+                // If evaluation fails, don't block any of the requests
+                System.err.println("Firewall rule batch evaluation error: " + e.getMessage());
+                return blocked;
+            } finally {
+                exit();
+            }
+        }
+
+        private boolean run(String name, Object input, String errorPrefix) {
+            if (script == null) return false;
+            Context ctx = enter();
+            try {
+                Scriptable scope = newScope(ctx);
+                scope.put(name, scope, input instanceof String ? input : Context.javaToJS(input, scope));
+                return isTrue(script.exec(ctx, scope));
+            } catch (Exception e) {
+                // If evaluation fails, don't block the request
+                System.err.println(errorPrefix + e.getMessage());
+                return false;
+            } finally {
+                exit();
+            }
+        }
+
+        private static boolean isTrue(Object result) {
             if (result instanceof Boolean) return (Boolean) result;
             if (result instanceof String) return Boolean.parseBoolean((String) result);
             if (result instanceof Number) return ((Number) result).intValue() != 0;
-            
-            return false;
-        } catch (Exception e) {
-            // If evaluation fails, don't block the request
-            System.err.println("Firewall rule array evaluation error: " + e.getMessage());
             return false;
-        } finally {
-            org.mozilla.javascript.Context.exit();
         }
     }
 
+    // A call's own scope over the shared one; lazy inputs become ordinary properties the first time they're read
+    private static final class CallScope extends NativeObject {
+
+        private Map<String, Supplier<?>> lazy;
+
+        void putLazy(String name, Supplier<?> value) {
+            if (lazy == null) lazy = new HashMap<>();
+            lazy.put(name, value);
+        }
+
+        @Override
+        public boolean has(String name, Scriptable start) {
+            return (lazy != null && lazy.containsKey(name)) || super.has(name, start);
+        }
+
+        @Override
+        public Object get(String name, Scriptable start) {
+            Supplier<?> value = lazy != null ? lazy.remove(name) : null;
+            if (value != null) super.put(name, this, Context.javaToJS(value.get(), this));
+            return super.get(name, start);
+        }
+
+        @Override
+        public void put(String name, Scriptable start, Object value) {
+            // a script assigning an input before reading it replaces it
+            if (lazy != null && start == this) lazy.remove(name);
+            super.put(name, start, value);
+        }
+
+        @Override
+        public void delete(String name) {
+            if (lazy != null) lazy.remove(name);
+            super.delete(name);
+        }
+    }
+
+    // Thrown out of a script that ran past its budget. An Error rather than an exception so neither the script's
+    // own try/catch nor the catch-alls that make a failing script a no-op can swallow it; callers turn it into a
+    // parsing error.
+    public static final class ScriptBudgetExceeded extends Error {
+
+        private ScriptBudgetExceeded(String message) {
+            super(message);
+        }
+
+        @Override
+        public String toString() {
+            return getMessage();
+        }
+    }
+
+    private static final class Budget {
+        long instructions;
+        long deadline;
+    }
+
+    private static final class BudgetedContextFactory extends ContextFactory {
+
+        @Override
+        protected Context makeContext() {
+            Context ctx = super.makeContext();
+            ctx.setInstructionObserverThreshold(OBSERVE_EVERY);
+            return ctx;
+        }
+
+        @Override
+        protected void observeInstructionCount(Context ctx, int instructionCount) {
+            Budget budget = (Budget) ctx.getThreadLocal(Budget.class);
+            if (budget == null) return;
+            budget.instructions += instructionCount;
+            if (budget.instructions > instructionBudget) {
+                throw new ScriptBudgetExceeded("Script stopped after running more than " + instructionBudget + " instructions");
+            }
+            if (System.nanoTime() - budget.deadline > 0) {
+                throw new ScriptBudgetExceeded("Script stopped after running for more than " + timeBudgetMillis + " ms");
+            }
+        }
+    }
 }
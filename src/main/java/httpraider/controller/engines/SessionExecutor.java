@@ -0,0 +1,112 @@
+package httpraider.controller.engines;
+
+import java.lang.reflect.Method;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Runs the blocking work of a session's streams: on virtual threads when the JVM has them, otherwise on a bounded pool
+public final class SessionExecutor implements Executor {
+
+    private static final int MAX_PLATFORM_THREADS = Math.max(4, Runtime.getRuntime().availableProcessors() * 2);
+    private static final long KEEP_ALIVE_S = 30;
+
+    private final ExecutorService executor;
+    private final boolean virtual;
+
+    public SessionExecutor(String name) {
+        ExecutorService virtualExecutor = createVirtualThreadExecutor(name);
+        virtual = virtualExecutor != null;
+        executor = virtual ? virtualExecutor : createPlatformThreadExecutor(name);
+    }
+
+    public boolean usesVirtualThreads() {
+        return virtual;
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        executor.execute(task);
+    }
+
+    public <T> Future<T> submit(Callable<T> task) {
+        return executor.submit(task);
+    }
+
+    public Lane newLane() {
+        return new Lane();
+    }
+
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    // Tasks of one stream: they run one at a time in submission order and can be cancelled together
+    public final class Lane implements Executor {
+
+        private final Queue<Runnable> queue = new ArrayDeque<>();
+        private Future<?> running;
+        private boolean cancelled;
+
+        @Override
+        public synchronized void execute(Runnable task) {
+            if (cancelled) return;
+            queue.add(task);
+            if (running == null) next();
+        }
+
+        public synchronized void cancel() {
+            cancelled = true;
+            queue.clear();
+            if (running != null) running.cancel(true);
+            running = null;
+        }
+
+        private synchronized void next() {
+            Runnable task = queue.poll();
+            if (task == null || executor.isShutdown()) {
+                running = null;
+                return;
+            }
+            try {
+                running = executor.submit(() -> {
+                    try {
+                        task.run();
+                    } finally {
+                        next();
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                running = null;
+                queue.clear();
+            }
+        }
+    }
+
+    // Executors.newThreadPerTaskExecutor and Thread.ofVirtual only exist from Java 21 on
+    private static ExecutorService createVirtualThreadExecutor(String name) {
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, name + "-", 0L);
+            ThreadFactory factory = (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+            Method perTask = Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+            return (ExecutorService) perTask.invoke(null, factory);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    private static ExecutorService createPlatformThreadExecutor(String name) {
+        AtomicInteger counter = new AtomicInteger();
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(MAX_PLATFORM_THREADS, MAX_PLATFORM_THREADS, KEEP_ALIVE_S, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), r -> {
+            Thread t = new Thread(r, name + "-" + counter.getAndIncrement());
+            t.setDaemon(true);
+            return t;
+        });
+        pool.allowCoreThreadTimeOut(true);
+        return pool;
+    }
+}
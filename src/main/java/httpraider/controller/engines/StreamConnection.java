@@ -0,0 +1,443 @@
+package httpraider.controller.engines;
+
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult;
+import javax.net.ssl.SSLException;
+import java.io.IOException;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+public final class StreamConnection {
+
+    public enum Status { CONNECTING, HANDSHAKING, OPEN, CLOSED }
+
+    public interface Listener {
+        void onOpen(StreamConnection connection);
+        void onData(StreamConnection connection, byte[] data, int offset, int length);
+        void onSent(StreamConnection connection, byte[] data);
+        void onClosed(StreamConnection connection, IOException cause);
+    }
+
+    private static final ByteBuffer EMPTY = ByteBuffer.allocate(0);
+    private static final int SOCKET_BUFFER_SIZE = 65538;
+    // a flood yields the selector thread after this many gathered writes or TLS records
+    private static final int FLOOD_WRITES_PER_FLUSH = 64;
+
+    private record PendingWrite(byte[] data, ByteBuffer buffer) {}
+
+    private final ConnectionEngine engine;
+    private final String host;
+    private final int port;
+    private final boolean tls;
+    private final Listener listener;
+    private final Queue<PendingWrite> writeQueue = new ConcurrentLinkedQueue<>();
+    private final ConnectionTimeline timeline = new ConnectionTimeline();
+
+    private volatile Status status = Status.CONNECTING;
+    private SocketChannel channel;
+    private SelectionKey key;
+    private SSLEngine ssl;
+    private ByteBuffer netIn;
+    private ByteBuffer netOut;
+    private ByteBuffer appIn;
+    private PendingWrite inFlight;
+    private Flood flood;
+    private long deadlineNanos;
+
+    StreamConnection(ConnectionEngine engine, String host, int port, boolean tls, Listener listener) {
+        this.engine = engine;
+        this.host = host;
+        this.port = port;
+        this.tls = tls;
+        this.listener = listener;
+    }
+
+    public String getHost() { return host; }
+    public int getPort() { return port; }
+    public boolean isTls() { return tls; }
+    public Status getStatus() { return status; }
+    public ConnectionTimeline getTimeline() { return timeline; }
+
+    public boolean isOpen() {
+        return status == Status.OPEN;
+    }
+
+    public boolean isClosed() {
+        return status == Status.CLOSED;
+    }
+
+    // Data written before the connection is open is queued and flushed once the handshake completes
+    public void write(byte[] data) {
+        if (status == Status.CLOSED || data.length == 0) return;
+        writeQueue.add(new PendingWrite(data, ByteBuffer.wrap(data)));
+        engine.execute(this::flushSafely);
+    }
+
+    // Writes the request over and over once everything queued before it has been written
+    public Flood flood(byte[] request, long count, long durationNanos) {
+        Flood next = new Flood(request, count, durationNanos);
+        engine.execute(() -> {
+            if (status == Status.CLOSED || request.length == 0) {
+                next.finish();
+                return;
+            }
+            if (flood != null) flood.finish();
+            flood = next;
+            flushSafely();
+        });
+        return next;
+    }
+
+    public void close() {
+        engine.execute(() -> fail(null));
+    }
+
+    // ---------------------------------------------------------------------
+    // Everything below runs on the engine's selector thread
+    // ---------------------------------------------------------------------
+
+    void register(SocketChannel channel, SelectionKey key, SSLEngine ssl, long deadlineNanos) throws IOException {
+        this.channel = channel;
+        this.key = key;
+        this.ssl = ssl;
+        this.deadlineNanos = deadlineNanos;
+        channel.setOption(StandardSocketOptions.SO_KEEPALIVE, true);
+        channel.setOption(StandardSocketOptions.SO_RCVBUF, SOCKET_BUFFER_SIZE);
+        channel.setOption(StandardSocketOptions.SO_SNDBUF, SOCKET_BUFFER_SIZE);
+        if (ssl != null) {
+            netIn = ByteBuffer.allocate(ssl.getSession().getPacketBufferSize());
+            netOut = ByteBuffer.allocate(ssl.getSession().getPacketBufferSize());
+            netOut.flip();
+            appIn = ByteBuffer.allocate(ssl.getSession().getApplicationBufferSize());
+        }
+    }
+
+    void handle(SelectionKey key) {
+        try {
+            if (!key.isValid()) return;
+            if (key.isConnectable()) finishConnect();
+            if (key.isValid() && key.isReadable()) read();
+            if (key.isValid() && key.isWritable()) flush();
+        } catch (IOException | RuntimeException ex) {
+            fail(ex instanceof IOException ? (IOException) ex : new IOException(ex));
+        }
+    }
+
+    void checkDeadline(long now) {
+        if ((status == Status.CONNECTING || status == Status.HANDSHAKING) && now - deadlineNanos > 0) {
+            fail(new IOException("Timed out while " + (status == Status.CONNECTING ? "connecting" : "handshaking")));
+        }
+    }
+
+    boolean isIdle() {
+        return status == Status.OPEN && writeQueue.isEmpty() && inFlight == null && flood == null && (netOut == null || !netOut.hasRemaining());
+    }
+
+    // Encrypts the final bytes ahead of time so that releasing them is a single channel write
+    ByteBuffer prepareFinal(byte[] data) throws IOException {
+        channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        if (ssl == null) return ByteBuffer.wrap(data);
+        ByteBuffer src = ByteBuffer.wrap(data);
+        ByteBuffer records = ByteBuffer.allocate(ssl.getSession().getPacketBufferSize());
+        while (src.hasRemaining()) {
+            SSLEngineResult result = ssl.wrap(src, records);
+            if (result.getStatus() == SSLEngineResult.Status.BUFFER_OVERFLOW) {
+                ByteBuffer bigger = ByteBuffer.allocate(records.capacity() * 2);
+                records.flip();
+                records = bigger.put(records);
+            } else if (result.getStatus() != SSLEngineResult.Status.OK) {
+                throw new IOException("TLS engine closed");
+            }
+        }
+        return records.flip();
+    }
+
+    void writeFinal(ByteBuffer buffer) throws IOException {
+        channel.write(buffer);
+    }
+
+    // Whatever the socket did not take right away is finished by the regular write path
+    void completeFinal(byte[] data, ByteBuffer buffer) {
+        if (!buffer.hasRemaining()) {
+            sent(data);
+        } else if (ssl == null) {
+            writeQueue.add(new PendingWrite(data, buffer));
+            interest(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+        } else {
+            netOut = buffer;
+            inFlight = new PendingWrite(data, EMPTY);
+            interest(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+        }
+    }
+
+    void fail(IOException cause) {
+        if (status == Status.CLOSED) return;
+        status = Status.CLOSED;
+        timeline.record(ConnectionTimeline.EventType.CLOSED, 0);
+        writeQueue.clear();
+        if (flood != null) {
+            flood.finish();
+            flood = null;
+        }
+        if (key != null) key.cancel();
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException ignored) {
+            }
+        }
+        listener.onClosed(this, cause);
+    }
+
+    private void flushSafely() {
+        if (status == Status.CLOSED || key == null) return;
+        try {
+            flush();
+        } catch (IOException | RuntimeException ex) {
+            fail(ex instanceof IOException ? (IOException) ex : new IOException(ex));
+        }
+    }
+
+    // Also called by the engine when connect() completed immediately
+    void connected() throws IOException {
+        timeline.record(ConnectionTimeline.EventType.TCP_CONNECTED, 0);
+        if (ssl == null) {
+            markOpen();
+        } else {
+            status = Status.HANDSHAKING;
+            ssl.beginHandshake();
+        }
+        flush();
+    }
+
+    private void finishConnect() throws IOException {
+        if (channel.finishConnect()) connected();
+    }
+
+    private void markOpen() {
+        if (ssl != null) timeline.record(ConnectionTimeline.EventType.TLS_HANDSHAKE, 0);
+        status = Status.OPEN;
+        listener.onOpen(this);
+    }
+
+    private void read() throws IOException {
+        if (ssl == null) {
+            ByteBuffer buffer = engine.readBuffer();
+            buffer.clear();
+            int n = channel.read(buffer);
+            if (n > 0) received(buffer.array(), 0, n);
+            if (n < 0) fail(null);
+            return;
+        }
+        int n = channel.read(netIn);
+        unwrap();
+        if (n < 0 || ssl.isInboundDone()) {
+            try {
+                ssl.closeInbound();
+            } catch (SSLException ignored) {
+            }
+            fail(status == Status.OPEN ? null : new IOException("Connection closed during the TLS handshake"));
+            return;
+        }
+        flush();
+    }
+
+    // Returns whether any buffered network bytes were consumed
+    private boolean unwrap() throws IOException {
+        boolean consumed = false;
+        netIn.flip();
+        try {
+            while (netIn.hasRemaining()) {
+                SSLEngineResult result = ssl.unwrap(netIn, appIn);
+                consumed |= result.bytesConsumed() > 0;
+                deliverAppData();
+                switch (result.getStatus()) {
+                    case BUFFER_UNDERFLOW -> {
+                        if (netIn.position() == 0 && netIn.limit() == netIn.capacity()) {
+                            ByteBuffer bigger = ByteBuffer.allocate(Math.max(ssl.getSession().getPacketBufferSize(), netIn.capacity() * 2));
+                            bigger.put(netIn).flip();
+                            netIn = bigger;
+                        }
+                        return consumed;
+                    }
+                    case BUFFER_OVERFLOW -> appIn = ByteBuffer.allocate(Math.max(ssl.getSession().getApplicationBufferSize(), appIn.capacity() * 2));
+                    case CLOSED -> {
+                        return consumed;
+                    }
+                    case OK -> {
+                        if (result.getHandshakeStatus() == SSLEngineResult.HandshakeStatus.NEED_TASK) runDelegatedTasks();
+                        if (result.bytesConsumed() == 0 && result.bytesProduced() == 0) return consumed;
+                    }
+                }
+            }
+            return consumed;
+        } finally {
+            netIn.compact();
+        }
+    }
+
+    private void deliverAppData() {
+        if (appIn.position() == 0) return;
+        appIn.flip();
+        received(appIn.array(), appIn.position(), appIn.remaining());
+        appIn.clear();
+    }
+
+    private void flush() throws IOException {
+        if (status == Status.CONNECTING || status == Status.CLOSED) return;
+        if (ssl == null) {
+            flushPlain();
+        } else {
+            flushTls();
+        }
+    }
+
+    // Queued writes go out between flood copies, never inside one the socket only took part of
+    private void flushPlain() throws IOException {
+        int floodWrites = 0;
+        while (true) {
+            PendingWrite next = writeQueue.peek();
+            if (next != null && (flood == null || !flood.midRequest())) {
+                channel.write(next.buffer());
+                if (next.buffer().hasRemaining()) {
+                    interest(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                    return;
+                }
+                writeQueue.poll();
+                sent(next.data());
+                continue;
+            }
+            if (flood == null) {
+                interest(SelectionKey.OP_READ);
+                return;
+            }
+            if (!flood.refill(System.nanoTime())) {
+                finishFlood();
+                continue;
+            }
+            if (floodWrites++ == FLOOD_WRITES_PER_FLUSH) {
+                interest(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                return;
+            }
+            flood.progress(channel.write(flood.buffers(), flood.offset(), flood.length()));
+            if (flood.hasPendingBatch()) {
+                // the socket is full
+                interest(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                return;
+            }
+        }
+    }
+
+    private void flushTls() throws IOException {
+        int floodWrites = 0;
+        while (true) {
+            if (!drainNetOut()) {
+                interest(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                return;
+            }
+            if (inFlight != null) {
+                sent(inFlight.data());
+                inFlight = null;
+            }
+            SSLEngineResult.HandshakeStatus hs = ssl.getHandshakeStatus();
+            switch (hs) {
+                case NEED_TASK -> {
+                    runDelegatedTasks();
+                    continue;
+                }
+                case NEED_WRAP -> {
+                    wrap(EMPTY);
+                    continue;
+                }
+                case NEED_UNWRAP, NEED_UNWRAP_AGAIN -> {
+                    // records that arrived together with the previous flight may already be buffered
+                    if (netIn.position() > 0 && unwrap()) continue;
+                    interest(SelectionKey.OP_READ);
+                    return;
+                }
+                default -> {
+                }
+            }
+            if (status == Status.HANDSHAKING) markOpen();
+            PendingWrite next = writeQueue.peek();
+            // as in flushPlain, a queued write waits while a flood copy is only partly wrapped
+            if (next != null && flood != null && flood.midRequest()) next = null;
+            if (next == null && flood != null) {
+                if (!flood.refill(System.nanoTime())) {
+                    finishFlood();
+                    continue;
+                }
+                if (floodWrites++ == FLOOD_WRITES_PER_FLUSH) {
+                    interest(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                    return;
+                }
+                flood.progress(wrap(flood.buffers(), flood.offset(), flood.length()).bytesConsumed());
+                continue;
+            }
+            if (next == null) {
+                interest(SelectionKey.OP_READ);
+                return;
+            }
+            wrap(next.buffer());
+            if (!next.buffer().hasRemaining()) {
+                // reported as sent once its last record has left netOut
+                writeQueue.poll();
+                inFlight = next;
+            }
+        }
+    }
+
+    private SSLEngineResult wrap(ByteBuffer src) throws IOException {
+        return wrap(new ByteBuffer[]{src}, 0, 1);
+    }
+
+    private SSLEngineResult wrap(ByteBuffer[] srcs, int offset, int length) throws IOException {
+        netOut.clear();
+        try {
+            SSLEngineResult result = ssl.wrap(srcs, offset, length, netOut);
+            if (result.getStatus() == SSLEngineResult.Status.BUFFER_OVERFLOW) {
+                netOut = ByteBuffer.allocate(netOut.capacity() * 2);
+                result = ssl.wrap(srcs, offset, length, netOut);
+            }
+            if (result.getStatus() == SSLEngineResult.Status.CLOSED) throw new IOException("TLS engine closed");
+            return result;
+        } finally {
+            netOut.flip();
+        }
+    }
+
+    private void finishFlood() {
+        flood.finish();
+        flood = null;
+    }
+
+    private boolean drainNetOut() throws IOException {
+        while (netOut.hasRemaining()) {
+            if (channel.write(netOut) == 0) return false;
+        }
+        return true;
+    }
+
+    private void sent(byte[] data) {
+        timeline.record(ConnectionTimeline.EventType.WRITE_FLUSHED, data.length);
+        listener.onSent(this, data);
+    }
+
+    private void received(byte[] data, int offset, int length) {
+        timeline.record(ConnectionTimeline.EventType.READ, length);
+        listener.onData(this, data, offset, length);
+    }
+
+    private void runDelegatedTasks() {
+        Runnable task;
+        while ((task = ssl.getDelegatedTask()) != null) task.run();
+    }
+
+    private void interest(int ops) {
+        if (key.isValid() && key.interestOps() != ops) key.interestOps(ops);
+    }
+}
@@ -0,0 +1,129 @@
+package httpraider.controller.engines;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+// Pre-writes all but the last bytes of every request, then releases the last bytes of all of them from one loop
+public final class SynchronizedSend {
+
+    public record Part(StreamConnection connection, byte[] request) {}
+
+    public record Result(List<Part> parts, long[] releaseNanos, long skewNanos) {}
+
+    // Every part that was not released has had its connection closed; released went out and are sent as usual
+    public static final class Failure extends IOException {
+        private final List<Part> released;
+
+        Failure(IOException cause, List<Part> released) {
+            super(cause.getMessage(), cause);
+            this.released = List.copyOf(released);
+        }
+
+        public List<Part> released() {
+            return released;
+        }
+    }
+
+    private static final long TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(15);
+    // gives the pre-written bytes time to reach the server before the last bytes go out
+    private static final long SETTLE_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private final List<Part> parts;
+    private final int tailLength;
+    private final CompletableFuture<Result> result = new CompletableFuture<>();
+    private final long deadlineNanos;
+    private long readyNanos;
+
+    SynchronizedSend(List<Part> parts, int tailLength) {
+        this.parts = List.copyOf(parts);
+        this.tailLength = Math.max(1, tailLength);
+        this.deadlineNanos = System.nanoTime() + TIMEOUT_NANOS;
+    }
+
+    CompletableFuture<Result> result() {
+        return result;
+    }
+
+    // Pre-writes all but the last tailLength bytes of the part. Called from the stream's lane, so the head follows
+    // anything that stream sent before; the send itself is only started once every part's head has been written
+    public static void writeHead(Part part, int tailLength) {
+        byte[] request = part.request();
+        int headLength = headLength(request, Math.max(1, tailLength));
+        if (headLength > 0) part.connection().write(Arrays.copyOfRange(request, 0, headLength));
+    }
+
+    // Runs on the selector thread; returns true once the send has either been released or failed
+    boolean poll(long now) {
+        for (Part part : parts) {
+            if (part.connection().isClosed()) {
+                abort(new IOException("Connection to " + part.connection().getHost() + " closed before release"), 0);
+                return true;
+            }
+        }
+        if (now - deadlineNanos > 0) {
+            abort(new IOException("Timed out waiting for all streams to be ready"), 0);
+            return true;
+        }
+        for (Part part : parts) {
+            if (!part.connection().isIdle()) {
+                readyNanos = 0;
+                return false;
+            }
+        }
+        if (readyNanos == 0) readyNanos = now;
+        if (now - readyNanos < SETTLE_NANOS) return false;
+        release();
+        return true;
+    }
+
+    void cancel() {
+        abort(new IOException("Connection engine shut down"), 0);
+    }
+
+    // The first released parts went out; every other one still holds a pre-written head that the next send on its
+    // connection would be appended to, so its connection is closed
+    private void abort(IOException cause, int released) {
+        for (int i = released; i < parts.size(); i++) parts.get(i).connection().fail(cause);
+        result.completeExceptionally(new Failure(cause, parts.subList(0, released)));
+    }
+
+    private void release() {
+        int n = parts.size();
+        byte[][] tails = new byte[n][];
+        ByteBuffer[] finals = new ByteBuffer[n];
+        long[] releaseNanos = new long[n];
+        int released = 0;
+        try {
+            for (int i = 0; i < n; i++) {
+                byte[] request = parts.get(i).request();
+                tails[i] = Arrays.copyOfRange(request, headLength(request, tailLength), request.length);
+                finals[i] = parts.get(i).connection().prepareFinal(tails[i]);
+            }
+            // nothing but the writes themselves between the first and the last release
+            for (; released < n; released++) {
+                parts.get(released).connection().writeFinal(finals[released]);
+                releaseNanos[released] = System.nanoTime();
+            }
+        } catch (IOException | RuntimeException ex) {
+            for (int i = 0; i < released; i++) parts.get(i).connection().completeFinal(tails[i], finals[i]);
+            abort(ex instanceof IOException ? (IOException) ex : new IOException(ex), released);
+            return;
+        }
+        long first = Long.MAX_VALUE;
+        long last = Long.MIN_VALUE;
+        for (int i = 0; i < n; i++) {
+            parts.get(i).connection().completeFinal(tails[i], finals[i]);
+            first = Math.min(first, releaseNanos[i]);
+            last = Math.max(last, releaseNanos[i]);
+        }
+        result.complete(new Result(parts, releaseNanos, last - first));
+    }
+
+    private static int headLength(byte[] request, int tailLength) {
+        return Math.max(0, request.length - tailLength);
+    }
+}
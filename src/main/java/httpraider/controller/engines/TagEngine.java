@@ -1,5 +1,6 @@
 package httpraider.controller.engines;
 
+import extension.HTTPRaiderExtension;
 import httpraider.controller.tools.CustomTagManager;
 import httpraider.model.CustomTagModel;
 
@@ -82,10 +83,22 @@ public final class TagEngine {
             Pattern p = Pattern.compile("<" + Pattern.quote(raw) + "_([0-9]+)>");
             Matcher m = p.matcher(out);
             StringBuffer sb = new StringBuffer();
+            boolean stopped = false;
             while (m.find()) {
                 String id    = m.group(1);
                 String block = contents.getOrDefault(id, "");
-                String repl  = JSEngine.runTagEngine(def.getScript(), block);
+                String repl = "";
+                // a tag script that never finishes expands to nothing, like one that fails, and is not run again for
+                // the tag's other uses in this request
+                if (!stopped) {
+                    try {
+                        repl = JSEngine.runTagEngine(def.getScript(), block);
+                    } catch (JSEngine.ScriptBudgetExceeded e) {
+                        HTTPRaiderExtension.API.logging().logToError("Custom tag <" + raw + "> was stopped: " + e.getMessage()
+                                + "; the request goes on with an empty expansion in its place");
+                        stopped = true;
+                    }
+                }
                 m.appendReplacement(sb, Matcher.quoteReplacement(repl));
             }
             m.appendTail(sb);
@@ -0,0 +1,81 @@
+package httpraider.controller.tools;
+
+import httpraider.controller.StreamController;
+import httpraider.controller.engines.Flood;
+import httpraider.parser.ResponseFramer;
+import httpraider.view.panels.FloodPanel;
+
+import javax.swing.*;
+import java.util.concurrent.TimeUnit;
+
+public final class FloodToolController implements ToolControllerInterface {
+
+    private static final long RESPONSE_WAIT_MS = 10_000;
+
+    private final FloodPanel view;
+    private final StreamController streamController;
+    private final Timer timer;
+    private Flood flood;
+    private long finishedAt;
+
+    public FloodToolController(FloodPanel view, StreamController streamController) {
+        this.view = view;
+        this.streamController = streamController;
+        timer = new Timer(250, e -> refresh());
+    }
+
+    @Override public String id() { return "FLOOD"; }
+    @Override public String name() { return "Flood"; }
+    @Override public JComponent component() { return view; }
+
+    @Override
+    public void attach() {
+        view.setStartActionListener(e -> start());
+        view.setStopActionListener(e -> {
+            if (flood != null) flood.stop();
+        });
+    }
+
+    @Override
+    public void detach() {
+        timer.stop();
+        if (flood != null) flood.stop();
+    }
+
+    private void start() {
+        long count = view.getCount();
+        long duration = view.getDurationSeconds();
+        if (count == 0 && duration == 0) {
+            JOptionPane.showMessageDialog(view, "Set a number of requests or a duration.", "Flood", JOptionPane.WARNING_MESSAGE);
+            return;
+        }
+        view.setRunning(true);
+        streamController.startFlood(count, TimeUnit.SECONDS.toMillis(duration), started -> {
+            flood = started;
+            if (flood == null) {
+                view.setRunning(false);
+                return;
+            }
+            finishedAt = 0;
+            timer.start();
+        });
+    }
+
+    private void refresh() {
+        if (flood == null) return;
+        double seconds = flood.getElapsedNanos() / 1e9;
+        long sent = flood.getRequestsSent();
+        ResponseFramer framer = streamController.getResponseFramer();
+        view.setStats(
+                sent + " (" + flood.getBytesSent() + " bytes)",
+                seconds > 0 ? String.format("%.0f", sent / seconds) : "-",
+                seconds > 0 ? String.format("%.0f", flood.getBytesSent() / seconds) : "-",
+                String.valueOf(framer.completeCount()));
+        if (flood.isFinished()) {
+            view.setRunning(false);
+            if (finishedAt == 0) finishedAt = System.currentTimeMillis();
+            // keeps counting responses that are still arriving for a while
+            if (framer.completeCount() >= sent || System.currentTimeMillis() - finishedAt > RESPONSE_WAIT_MS) timer.stop();
+        }
+    }
+}
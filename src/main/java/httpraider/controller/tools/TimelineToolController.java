@@ -0,0 +1,80 @@
+package httpraider.controller.tools;
+
+import httpraider.controller.StreamController;
+import httpraider.controller.engines.ConnectionTimeline;
+import httpraider.view.panels.TimelinePanel;
+
+import javax.swing.*;
+import java.util.List;
+
+public final class TimelineToolController implements ToolControllerInterface {
+
+    private final TimelinePanel view;
+    private final StreamController streamController;
+    private final Timer timer;
+    private ConnectionTimeline shown;
+    private int shownSize;
+
+    public TimelineToolController(TimelinePanel view, StreamController streamController) {
+        this.view = view;
+        this.streamController = streamController;
+        timer = new Timer(500, e -> refresh());
+    }
+
+    @Override public String id() { return "TIMELINE"; }
+    @Override public String name() { return "Timeline"; }
+    @Override public JComponent component() { return view; }
+
+    @Override
+    public void attach() {
+        timer.start();
+    }
+
+    @Override
+    public void detach() {
+        timer.stop();
+    }
+
+    private void refresh() {
+        if (!view.isShowing()) return;
+        ConnectionTimeline timeline = streamController.getTimeline();
+        if (timeline == shown && (timeline == null || timeline.size() == shownSize)) return;
+        shown = timeline;
+        if (timeline == null) {
+            shownSize = 0;
+            view.setSummary("-", "-", "-", "-", "-");
+            view.setRows(new Object[0][]);
+            return;
+        }
+        List<ConnectionTimeline.Event> events = timeline.events();
+        shownSize = events.size();
+        long start = timeline.startNanos();
+        long received = 0;
+        long lastRead = -1;
+        Object[][] rows = new Object[events.size()][];
+        for (int i = 0; i < events.size(); i++) {
+            ConnectionTimeline.Event event = events.get(i);
+            if (event.type() == ConnectionTimeline.EventType.FIRST_BYTE || event.type() == ConnectionTimeline.EventType.READ) {
+                received += event.bytes();
+                lastRead = event.nanos();
+            }
+            rows[i] = new Object[]{millis(event.nanos() - start), event.type(), event.bytes() == 0 ? "" : event.bytes()};
+        }
+        long connected = timeline.nanosOf(ConnectionTimeline.EventType.TCP_CONNECTED);
+        long handshake = timeline.nanosOf(ConnectionTimeline.EventType.TLS_HANDSHAKE);
+        long firstByte = timeline.nanosOf(ConnectionTimeline.EventType.FIRST_BYTE);
+        long lastWrite = timeline.lastWriteBeforeFirstByte();
+        String dropped = timeline.droppedEvents() > 0 ? " (" + timeline.droppedEvents() + " events dropped)" : "";
+        view.setSummary(
+                connected < 0 ? "-" : millis(connected - start),
+                handshake < 0 || connected < 0 ? "-" : millis(handshake - connected),
+                firstByte < 0 || lastWrite < 0 ? "-" : millis(firstByte - lastWrite) + " after write",
+                lastRead < 0 ? "-" : millis(lastRead - start),
+                received + " bytes" + dropped);
+        view.setRows(rows);
+    }
+
+    private static String millis(long nanos) {
+        return String.format("%.3f ms", nanos / 1_000_000.0);
+    }
+}
@@ -0,0 +1,201 @@
+package httpraider.model;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+// Append-only byte queue stored as fixed-size pages, so growing it never copies what is already stored.
+// Only the newest pages stay on the heap; older ones are spilled to a memory-mapped temp file.
+public class QueueBuffer {
+
+    public static final int PAGE_SIZE = 64 * 1024;
+    public static final int DEFAULT_MAX_HEAP_PAGES = 256;
+
+    private final List<byte[]> pages = new ArrayList<>();
+    private final int maxHeapPages;
+    private SpillFile spillFile;
+    private boolean spillDisabled;
+    private int spilledPages;
+    private long size;
+    private long flushed;
+
+    public QueueBuffer() {
+        this(DEFAULT_MAX_HEAP_PAGES);
+    }
+
+    public QueueBuffer(int maxHeapPages) {
+        this.maxHeapPages = Math.max(2, maxHeapPages);
+    }
+
+    public synchronized void append(byte[] data) {
+        append(data, 0, data.length);
+    }
+
+    public synchronized void append(byte[] data, int offset, int length) {
+        while (length > 0) {
+            int pageOffset = (int) (size % PAGE_SIZE);
+            if (pageOffset == 0) {
+                pages.add(new byte[PAGE_SIZE]);
+                spillOldPages();
+            }
+            int n = Math.min(length, PAGE_SIZE - pageOffset);
+            System.arraycopy(data, offset, pages.get(pages.size() - 1), pageOffset, n);
+            offset += n;
+            length -= n;
+            size += n;
+        }
+    }
+
+    public synchronized long size() {
+        return size;
+    }
+
+    public synchronized long flushedSize() {
+        return flushed;
+    }
+
+    public synchronized long spilledSize() {
+        return (long) spilledPages * PAGE_SIZE;
+    }
+
+    // Bytes appended since the previous call; the caller is expected to append them to whatever it renders
+    public synchronized byte[] drainDelta() {
+        byte[] delta = read(flushed, (int) Math.min(Integer.MAX_VALUE - 8, size - flushed));
+        flushed += delta.length;
+        return delta;
+    }
+
+    // Marks everything as flushed and returns at most the last maxLength bytes
+    public synchronized byte[] drainTail(int maxLength) {
+        flushed = size;
+        return read(Math.max(0, size - maxLength), maxLength);
+    }
+
+    public synchronized byte[] read(long position, int length) {
+        length = (int) Math.max(0, Math.min(length, size - position));
+        byte[] out = new byte[length];
+        int copied = 0;
+        while (copied < length) {
+            long pos = position + copied;
+            int pageIndex = (int) (pos / PAGE_SIZE);
+            int pageOffset = (int) (pos % PAGE_SIZE);
+            int n = Math.min(length - copied, PAGE_SIZE - pageOffset);
+            byte[] page = pages.get(pageIndex);
+            if (page != null) {
+                System.arraycopy(page, pageOffset, out, copied, n);
+            } else {
+                spillFile.read(pageIndex, pageOffset, out, copied, n);
+            }
+            copied += n;
+        }
+        return out;
+    }
+
+    public synchronized byte[] toByteArray() {
+        return read(0, (int) Math.min(Integer.MAX_VALUE - 8, size));
+    }
+
+    public synchronized void writeTo(DataOutput out) throws IOException {
+        out.writeLong(size);
+        for (long pos = 0; pos < size; pos += PAGE_SIZE) {
+            out.write(read(pos, PAGE_SIZE));
+        }
+    }
+
+    public synchronized void appendFrom(DataInput in) throws IOException {
+        long remaining = in.readLong();
+        byte[] page = new byte[PAGE_SIZE];
+        while (remaining > 0) {
+            int n = (int) Math.min(PAGE_SIZE, remaining);
+            in.readFully(page, 0, n);
+            append(page, 0, n);
+            remaining -= n;
+        }
+    }
+
+    public synchronized void clear() {
+        pages.clear();
+        spilledPages = 0;
+        size = 0;
+        flushed = 0;
+        if (spillFile != null) {
+            spillFile.close();
+            spillFile = null;
+        }
+    }
+
+    // Drops everything stored and releases the spill file; anything appended afterwards stays on the heap
+    public synchronized void close() {
+        clear();
+        spillDisabled = true;
+    }
+
+    private void spillOldPages() {
+        // the newest page is still being written, so it always stays on the heap
+        while (!spillDisabled && pages.size() - spilledPages > maxHeapPages) {
+            try {
+                if (spillFile == null) spillFile = new SpillFile();
+                spillFile.write(spilledPages, pages.get(spilledPages));
+                pages.set(spilledPages, null);
+                spilledPages++;
+            } catch (IOException | RuntimeException e) {
+                spillDisabled = true;
+            }
+        }
+    }
+
+    private static final class SpillFile {
+
+        private static final int REGION_PAGES = 64;
+        private static final long REGION_SIZE = (long) REGION_PAGES * PAGE_SIZE;
+
+        private final Path path;
+        private final FileChannel channel;
+        private final List<MappedByteBuffer> regions = new ArrayList<>();
+
+        SpillFile() throws IOException {
+            path = Files.createTempFile("http-hacker-queue", ".spill");
+            channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.DELETE_ON_CLOSE);
+        }
+
+        void write(int pageIndex, byte[] page) throws IOException {
+            region(pageIndex).put(offsetInRegion(pageIndex), page);
+        }
+
+        void read(int pageIndex, int pageOffset, byte[] dst, int offset, int length) {
+            try {
+                region(pageIndex).get(offsetInRegion(pageIndex) + pageOffset, dst, offset, length);
+            } catch (IOException e) {
+                throw new IllegalStateException("Spilled queue data is no longer readable", e);
+            }
+        }
+
+        void close() {
+            regions.clear();
+            try {
+                channel.close();
+                Files.deleteIfExists(path);
+            } catch (IOException ignored) {
+            }
+        }
+
+        private MappedByteBuffer region(int pageIndex) throws IOException {
+            int region = pageIndex / REGION_PAGES;
+            while (regions.size() <= region) {
+                regions.add(channel.map(FileChannel.MapMode.READ_WRITE, regions.size() * REGION_SIZE, REGION_SIZE));
+            }
+            return regions.get(region);
+        }
+
+        private static int offsetInRegion(int pageIndex) {
+            return (pageIndex % REGION_PAGES) * PAGE_SIZE;
+        }
+    }
+}
@@ -1,5 +1,8 @@
 package httpraider.model;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.io.Serial;
 import java.io.Serializable;
 import java.util.UUID;
@@ -12,16 +15,20 @@ public class StreamModel implements Serializable {
     private final String id;
     private String name;
     private byte[] clientRequest;
+    // Only used to read sessions saved before the queues were paged
     private byte[] requestQueue;
     private byte[] responseQueue;
+    private boolean pagedQueues;
+    private transient QueueBuffer requestQueueBuffer;
+    private transient QueueBuffer responseQueueBuffer;
     private ConnectionSettingsModel connectionSettingsModel;
 
     public StreamModel(){
         id = UUID.randomUUID().toString();
         connectionSettingsModel = new ConnectionSettingsModel();
         clientRequest = new byte[0];
-        requestQueue = new byte[0];
-        responseQueue = new byte[0];
+        requestQueueBuffer = new QueueBuffer();
+        responseQueueBuffer = new QueueBuffer();
         name = "";
     }
 
@@ -29,16 +36,18 @@ public class StreamModel implements Serializable {
         id = UUID.randomUUID().toString();
         connectionSettingsModel = new ConnectionSettingsModel();
         clientRequest = new byte[0];
-        requestQueue = new byte[0];
-        responseQueue = new byte[0];
+        requestQueueBuffer = new QueueBuffer();
+        responseQueueBuffer = new QueueBuffer();
         this.name = name;
     }
 
     public StreamModel(String name, byte[] clientRequest, byte[] requestQueue, byte[] responseQueue, ConnectionSettingsModel connectionSettingsModel) {
         id = UUID.randomUUID().toString();
         this.clientRequest = clientRequest;
-        this.requestQueue = requestQueue;
-        this.responseQueue = responseQueue;
+        requestQueueBuffer = new QueueBuffer();
+        requestQueueBuffer.append(requestQueue);
+        responseQueueBuffer = new QueueBuffer();
+        responseQueueBuffer.append(responseQueue);
         this.connectionSettingsModel = connectionSettingsModel;
         this.name = name;
     }
@@ -53,20 +62,12 @@ public class StreamModel implements Serializable {
         clientRequest = v;
     }
 
-    public byte[] getRequestQueue() {
-        return requestQueue;
+    public QueueBuffer getRequestQueue() {
+        return requestQueueBuffer;
     }
 
-    public void setRequestQueue(byte[] v) {
-        requestQueue = v;
-    }
-
-    public byte[] getResponseQueue() {
-        return responseQueue;
-    }
-
-    public void setResponseQueue(byte[] v) {
-        responseQueue = v;
+    public QueueBuffer getResponseQueue() {
+        return responseQueueBuffer;
     }
 
     public ConnectionSettingsModel getConnectionSettings() {
@@ -84,4 +85,31 @@ public class StreamModel implements Serializable {
     public void setName(String name) {
         this.name = name;
     }
+
+    // Queues are streamed page by page instead of being flattened into one array
+    @Serial
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        pagedQueues = true;
+        requestQueue = null;
+        responseQueue = null;
+        out.defaultWriteObject();
+        requestQueueBuffer.writeTo(out);
+        responseQueueBuffer.writeTo(out);
+    }
+
+    @Serial
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        requestQueueBuffer = new QueueBuffer();
+        responseQueueBuffer = new QueueBuffer();
+        if (pagedQueues) {
+            requestQueueBuffer.appendFrom(in);
+            responseQueueBuffer.appendFrom(in);
+        } else {
+            if (requestQueue != null) requestQueueBuffer.append(requestQueue);
+            if (responseQueue != null) responseQueueBuffer.append(responseQueue);
+        }
+        requestQueue = null;
+        responseQueue = null;
+    }
 }
@@ -56,6 +56,8 @@ public class HttpParserModel implements Serializable {
     // --- Firewall rules ---
     private List<FirewallRule> firewallRules = new ArrayList<>();
 
+    private transient volatile int version;
+
     public HttpParserModel() {
         headerLineEndings = new ArrayList<>();
         headerLineEndings.add("\\r\\n");
@@ -102,86 +104,97 @@ public class HttpParserModel implements Serializable {
         firewallRules = new ArrayList<>();
     }
 
+    // --- Edit tracking ---
+
+    // Bumped by every setter so compiled parser plans know when to rebuild
+    public int getVersion() { return version; }
+
+    private void edited() { version++; }
+
     // --- Getters & Setters ---
 
     public List<String> getHeaderLineEndings() { return headerLineEndings; }
-    public void setHeaderLineEndings(List<String> headerLineEndings) { this.headerLineEndings = headerLineEndings; }
+    public void setHeaderLineEndings(List<String> headerLineEndings) { this.headerLineEndings = headerLineEndings; edited(); }
 
     public boolean isAllowHeaderFolding() { return allowHeaderFolding; }
-    public void setAllowHeaderFolding(boolean allowHeaderFolding) { this.allowHeaderFolding = allowHeaderFolding; }
+    public void setAllowHeaderFolding(boolean allowHeaderFolding) { this.allowHeaderFolding = allowHeaderFolding; edited(); }
 
     public List<String> getDeleteHeaderRules() { return deleteHeaderRules; }
     public void setDeleteHeaderRules(List<String> deleteHeaderRules) {
         this.deleteHeaderRules = deleteHeaderRules != null ? new ArrayList<>(deleteHeaderRules) : new ArrayList<>();
+        edited();
     }
 
     public List<String> getAddHeaderRules() { return addHeaderRules; }
     public void setAddHeaderRules(List<String> addHeaderRules) {
         this.addHeaderRules = addHeaderRules != null ? new ArrayList<>(addHeaderRules) : new ArrayList<>();
+        edited();
     }
 
     public List<BodyLenHeaderRule> getBodyLenHeaderRules() { return bodyLenHeaderRules; }
-    public void setBodyLenHeaderRules(List<BodyLenHeaderRule> bodyLenHeaderRules) { this.bodyLenHeaderRules = bodyLenHeaderRules; }
+    public void setBodyLenHeaderRules(List<BodyLenHeaderRule> bodyLenHeaderRules) { this.bodyLenHeaderRules = bodyLenHeaderRules; edited(); }
 
     public List<String> getChunkedLineEndings() { return chunkedLineEndings; }
-    public void setChunkedLineEndings(List<String> chunkedLineEndings) { this.chunkedLineEndings = chunkedLineEndings; }
+    public void setChunkedLineEndings(List<String> chunkedLineEndings) { this.chunkedLineEndings = chunkedLineEndings; edited(); }
 
     public List<String> getRequestLineDelimiters() { return requestLineDelimiters; }
-    public void setRequestLineDelimiters(List<String> requestLineDelimiters) { this.requestLineDelimiters = requestLineDelimiters; }
+    public void setRequestLineDelimiters(List<String> requestLineDelimiters) { this.requestLineDelimiters = requestLineDelimiters; edited(); }
 
     public boolean isRewriteMethodEnabled() { return rewriteMethodEnabled; }
-    public void setRewriteMethodEnabled(boolean rewriteMethodEnabled) { this.rewriteMethodEnabled = rewriteMethodEnabled; }
+    public void setRewriteMethodEnabled(boolean rewriteMethodEnabled) { this.rewriteMethodEnabled = rewriteMethodEnabled; edited(); }
 
     public String getFromMethod() { return fromMethod; }
-    public void setFromMethod(String fromMethod) { this.fromMethod = fromMethod; }
+    public void setFromMethod(String fromMethod) { this.fromMethod = fromMethod; edited(); }
 
     public String getToMethod() { return toMethod; }
-    public void setToMethod(String toMethod) { this.toMethod = toMethod; }
+    public void setToMethod(String toMethod) { this.toMethod = toMethod; edited(); }
 
     public boolean isDecodeUrlBeforeForwarding() { return decodeUrlBeforeForwarding; }
-    public void setDecodeUrlBeforeForwarding(boolean decodeUrlBeforeForwarding) { this.decodeUrlBeforeForwarding = decodeUrlBeforeForwarding; }
+    public void setDecodeUrlBeforeForwarding(boolean decodeUrlBeforeForwarding) { this.decodeUrlBeforeForwarding = decodeUrlBeforeForwarding; edited(); }
 
     public String getUrlDecodeFrom() { return urlDecodeFrom; }
-    public void setUrlDecodeFrom(String urlDecodeFrom) { this.urlDecodeFrom = urlDecodeFrom; }
+    public void setUrlDecodeFrom(String urlDecodeFrom) { this.urlDecodeFrom = urlDecodeFrom; edited(); }
 
     public String getUrlDecodeTo() { return urlDecodeTo; }
-    public void setUrlDecodeTo(String urlDecodeTo) { this.urlDecodeTo = urlDecodeTo; }
+    public void setUrlDecodeTo(String urlDecodeTo) { this.urlDecodeTo = urlDecodeTo; edited(); }
 
     public ForcedHttpVersion getForcedHttpVersion() { return forcedHttpVersion; }
-    public void setForcedHttpVersion(ForcedHttpVersion forcedHttpVersion) { this.forcedHttpVersion = forcedHttpVersion; }
+    public void setForcedHttpVersion(ForcedHttpVersion forcedHttpVersion) { this.forcedHttpVersion = forcedHttpVersion; edited(); }
 
     public String getCustomHttpVersion() { return customHttpVersion; }
-    public void setCustomHttpVersion(String customHttpVersion) { this.customHttpVersion = customHttpVersion; }
+    public void setCustomHttpVersion(String customHttpVersion) { this.customHttpVersion = customHttpVersion; edited(); }
 
     public boolean isUseHeaderLinesJs() { return useHeaderLinesJs; }
-    public void setUseHeaderLinesJs(boolean useHeaderLinesJs) { this.useHeaderLinesJs = useHeaderLinesJs; }
+    public void setUseHeaderLinesJs(boolean useHeaderLinesJs) { this.useHeaderLinesJs = useHeaderLinesJs; edited(); }
 
     public String getHeaderLinesScript() { return headerLinesScript; }
-    public void setHeaderLinesScript(String headerLinesScript) { this.headerLinesScript = headerLinesScript; }
+    public void setHeaderLinesScript(String headerLinesScript) { this.headerLinesScript = headerLinesScript; edited(); }
 
     public boolean isUseRequestLineJs() { return useRequestLineJs; }
-    public void setUseRequestLineJs(boolean useRequestLineJs) { this.useRequestLineJs = useRequestLineJs; }
+    public void setUseRequestLineJs(boolean useRequestLineJs) { this.useRequestLineJs = useRequestLineJs; edited(); }
 
     public String getRequestLineScript() { return requestLineScript; }
-    public void setRequestLineScript(String requestLineScript) { this.requestLineScript = requestLineScript; }
+    public void setRequestLineScript(String requestLineScript) { this.requestLineScript = requestLineScript; edited(); }
 
     public boolean isUseMessageLengthJs() { return useMessageLengthJs; }
-    public void setUseMessageLengthJs(boolean useMessageLengthJs) { this.useMessageLengthJs = useMessageLengthJs; }
+    public void setUseMessageLengthJs(boolean useMessageLengthJs) { this.useMessageLengthJs = useMessageLengthJs; edited(); }
 
     public String getMessageLengthScript() { return messageLengthScript; }
-    public void setMessageLengthScript(String messageLengthScript) { this.messageLengthScript = messageLengthScript; }
+    public void setMessageLengthScript(String messageLengthScript) { this.messageLengthScript = messageLengthScript; edited(); }
 
     public MessageLenBodyEncoding getOutputBodyEncoding() { return outputBodyEncoding; }
-    public void setOutputBodyEncoding(MessageLenBodyEncoding outputBodyEncoding) { this.outputBodyEncoding = outputBodyEncoding; }
+    public void setOutputBodyEncoding(MessageLenBodyEncoding outputBodyEncoding) { this.outputBodyEncoding = outputBodyEncoding; edited(); }
 
     public List<LoadBalancingRule> getLoadBalancingRules() { return loadBalancingRules; }
     public void setLoadBalancingRules(List<LoadBalancingRule> rules) {
         this.loadBalancingRules = rules != null ? new ArrayList<>(rules) : new ArrayList<>();
+        edited();
     }
 
     public List<FirewallRule> getFirewallRules() { return firewallRules; }
     public void setFirewallRules(List<FirewallRule> rules) {
         this.firewallRules = rules != null ? new ArrayList<>(rules) : new ArrayList<>();
+        edited();
     }
 
     // --- Nested types ---
@@ -0,0 +1,206 @@
+package httpraider.parser;
+
+import httpraider.controller.engines.JSEngine;
+import httpraider.model.network.FirewallRule;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+// A proxy's enabled firewall rules with their scripts compiled once per edit of its settings, run cheapest input
+// first. The request line, headers and body are cut out once per request and only when a rule reads them. A block
+// still reports the first blocking rule in configured order: once one blocks, only rules configured before it run.
+final class FirewallPipeline {
+
+    static final Result PASSED = new Result(false, false, "");
+
+    private final List<CompiledRule> rules = new ArrayList<>();
+    private final boolean batched;
+
+    FirewallPipeline(List<FirewallRule> enabledRules) {
+        for (int i = 0; i < enabledRules.size(); i++) {
+            FirewallRule rule = enabledRules.get(i);
+            if (rule.getSource() == null) continue;
+            rules.add(new CompiledRule(i, rule.getSource(), rule.isCloseConnection(),
+                    JSEngine.compileFirewallRule(rule.getJsCode())));
+        }
+        rules.sort(Comparator.comparingInt((CompiledRule rule) -> cost(rule.source)).thenComparingInt(rule -> rule.index));
+        boolean anyBatch = false;
+        for (CompiledRule rule : rules) anyBatch |= rule.script.isBatch();
+        batched = anyBatch;
+    }
+
+    // Whether a rule takes its requests in batches, so they are worth checking together with checkAll
+    boolean batched() {
+        return batched;
+    }
+
+    Result check(byte[] rawRequest, int headerLength, HeaderTable headers) {
+        if (rules.isEmpty()) return PASSED;
+        Request request = new Request(rawRequest, headerLength, headers.lines());
+        CompiledRule blocker = null;
+        for (CompiledRule rule : rules) {
+            if (blocker != null && rule.index > blocker.index) continue;
+            if (rule.blocks(request)) blocker = rule;
+        }
+        if (blocker == null) return PASSED;
+        return new Result(true, blocker.closeConnection, blocker.source.getDisplayName());
+    }
+
+    // check for each request, with every batch rule called once for all the requests it still has to decide
+    Result[] checkAll(List<byte[]> rawRequests, List<Integer> headerLengths, List<HeaderTable> headers) {
+        int count = rawRequests.size();
+        Result[] results = new Result[count];
+        if (rules.isEmpty()) {
+            Arrays.fill(results, PASSED);
+            return results;
+        }
+        Request[] requests = new Request[count];
+        for (int i = 0; i < count; i++) requests[i] = new Request(rawRequests.get(i), headerLengths.get(i), headers.get(i).lines());
+        CompiledRule[] blockers = new CompiledRule[count];
+        for (CompiledRule rule : rules) {
+            // the requests this rule could still change the outcome of, and what it reads from each
+            int[] pending = new int[count];
+            Object[] inputs = new Object[count];
+            int size = 0;
+            for (int i = 0; i < count; i++) {
+                if (blockers[i] != null && rule.index > blockers[i].index) continue;
+                Object input = rule.source == FirewallRule.Source.HEADERS ? requests[i].headers() : requests[i].input(rule.source);
+                if (input == null) continue;
+                pending[size] = i;
+                inputs[size++] = input;
+            }
+            if (size == 0) continue;
+            boolean[] blocked = rule.script.testAll(Arrays.copyOf(inputs, size));
+            for (int p = 0; p < size; p++) {
+                if (blocked[p]) blockers[pending[p]] = rule;
+            }
+        }
+        for (int i = 0; i < count; i++) {
+            CompiledRule blocker = blockers[i];
+            results[i] = blocker == null ? PASSED : new Result(true, blocker.closeConnection, blocker.source.getDisplayName());
+        }
+        return results;
+    }
+
+    // Roughly what reading the input costs: a word of the request line, the header lines, then the whole body
+    private static int cost(FirewallRule.Source source) {
+        switch (source) {
+            case METHOD:
+            case VERSION:
+                return 0;
+            case URL:
+                return 1;
+            case HEADERS:
+                return 2;
+            case BODY:
+                return 3;
+            default:
+                return 4;
+        }
+    }
+
+    static final class Result {
+        final boolean blocked;
+        final boolean closeConnection;
+        final String triggeredSource;
+
+        private Result(boolean blocked, boolean closeConnection, String triggeredSource) {
+            this.blocked = blocked;
+            this.closeConnection = closeConnection;
+            this.triggeredSource = triggeredSource;
+        }
+    }
+
+    private static final class CompiledRule {
+        private final int index;
+        private final FirewallRule.Source source;
+        private final boolean closeConnection;
+        private final JSEngine.FirewallScript script;
+
+        private CompiledRule(int index, FirewallRule.Source source, boolean closeConnection, JSEngine.FirewallScript script) {
+            this.index = index;
+            this.source = source;
+            this.closeConnection = closeConnection;
+            this.script = script;
+        }
+
+        boolean blocks(Request request) {
+            if (source == FirewallRule.Source.HEADERS) {
+                String[] headers = request.headers();
+                return headers != null && script.testHeaders(headers);
+            }
+            String input = request.input(source);
+            return input != null && script.test(input);
+        }
+    }
+
+    // The inputs of one request, each worked out on first use and cut the way the rules have always seen them
+    private static final class Request {
+
+        private final byte[] raw;
+        private final int headerLength;
+        private final List<String> headerLines;
+        private String[] requestLine;
+        private String[] headers;
+        private String body;
+        private String full;
+
+        private Request(byte[] raw, int headerLength, List<String> headerLines) {
+            this.raw = raw;
+            this.headerLength = headerLength;
+            this.headerLines = headerLines;
+        }
+
+        String input(FirewallRule.Source source) {
+            switch (source) {
+                case METHOD: {
+                    String[] parts = requestLine();
+                    return parts != null && parts.length > 0 ? parts[0] : null;
+                }
+                case URL: {
+                    String[] parts = requestLine();
+                    return parts != null && parts.length > 1 ? parts[1] : null;
+                }
+                case VERSION: {
+                    String[] parts = requestLine();
+                    return parts != null && parts.length > 2 ? stripLineBreaks(parts[parts.length - 1]) : null;
+                }
+                case BODY:
+                    if (body == null) body = new String(raw, headerLength, raw.length - headerLength, StandardCharsets.ISO_8859_1);
+                    return body;
+                case FULL_REQUEST:
+                    if (full == null) full = new String(raw, StandardCharsets.ISO_8859_1);
+                    return full;
+                default:
+                    return null;
+            }
+        }
+
+        // The header lines after the request line without CR or LF, or null when there are none
+        String[] headers() {
+            if (headers == null && headerLines.size() > 1) {
+                headers = new String[headerLines.size() - 1];
+                for (int i = 1; i < headerLines.size(); i++) headers[i - 1] = stripLineBreaks(headerLines.get(i));
+            }
+            return headers;
+        }
+
+        private String[] requestLine() {
+            if (requestLine == null && !headerLines.isEmpty()) requestLine = headerLines.get(0).split(" ");
+            return requestLine;
+        }
+
+        private static String stripLineBreaks(String value) {
+            if (value.indexOf('\r') < 0 && value.indexOf('\n') < 0) return value;
+            StringBuilder sb = new StringBuilder(value.length());
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                if (c != '\r' && c != '\n') sb.append(c);
+            }
+            return sb.toString();
+        }
+    }
+}
@@ -0,0 +1,195 @@
+package httpraider.parser;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// Aho-Corasick automaton over the header line endings and every pair of them: one pass over a buffer finds
+// the header/body delimiter and every line ending before it
+final class HeaderScanner {
+
+    private final int endingCount;
+    private final int[] lengths;
+    private final int maxDelimiterLength;
+    private final int[][] next;
+    private final int[][] matches;
+
+    // Endings must be non-empty; pattern i < endingCount is ending i, pattern endingCount + i * endingCount + j
+    // is ending i followed by ending j
+    HeaderScanner(List<byte[]> endings) {
+        endingCount = endings.size();
+        List<byte[]> patterns = new ArrayList<>(endings);
+        for (byte[] first : endings) {
+            for (byte[] second : endings) {
+                byte[] combined = Arrays.copyOf(first, first.length + second.length);
+                System.arraycopy(second, 0, combined, first.length, second.length);
+                patterns.add(combined);
+            }
+        }
+
+        lengths = new int[patterns.size()];
+        int longest = 0;
+        List<int[]> trie = new ArrayList<>();
+        List<List<Integer>> output = new ArrayList<>();
+        trie.add(newState());
+        output.add(new ArrayList<>());
+        for (int id = 0; id < patterns.size(); id++) {
+            byte[] pattern = patterns.get(id);
+            lengths[id] = pattern.length;
+            if (id >= endingCount) longest = Math.max(longest, pattern.length);
+            int state = 0;
+            for (byte b : pattern) {
+                int c = b & 0xff;
+                if (trie.get(state)[c] < 0) {
+                    trie.get(state)[c] = trie.size();
+                    trie.add(newState());
+                    output.add(new ArrayList<>());
+                }
+                state = trie.get(state)[c];
+            }
+            output.get(state).add(id);
+        }
+        maxDelimiterLength = longest;
+
+        // breadth first, turning the trie into a full transition table and merging the outputs of fail states
+        int states = trie.size();
+        next = new int[states][];
+        matches = new int[states][];
+        int[] fail = new int[states];
+        int[] queue = new int[states];
+        int head = 0, tail = 0;
+        next[0] = new int[256];
+        for (int c = 0; c < 256; c++) {
+            int child = trie.get(0)[c];
+            if (child > 0) {
+                fail[child] = 0;
+                queue[tail++] = child;
+                next[0][c] = child;
+            }
+        }
+        matches[0] = toArray(output.get(0));
+        while (head < tail) {
+            int state = queue[head++];
+            next[state] = new int[256];
+            List<Integer> merged = output.get(state);
+            for (int id : matches[fail[state]]) {
+                if (!merged.contains(id)) merged.add(id);
+            }
+            matches[state] = toArray(merged);
+            for (int c = 0; c < 256; c++) {
+                int child = trie.get(state)[c];
+                if (child > 0) {
+                    fail[child] = next[fail[state]][c];
+                    queue[tail++] = child;
+                    next[state][c] = child;
+                } else {
+                    next[state][c] = next[fail[state]][c];
+                }
+            }
+        }
+    }
+
+    // Scans data[from, to) up to the earliest header/body delimiter; ties go to the pair configured first
+    Scan scan(byte[] data, int from, int to) {
+        return scan(data, from, to, true);
+    }
+
+    // Where each line of data[from, to) ends, with no header/body delimiter to stop at
+    int[] lineEnds(byte[] data, int from, int to) {
+        return scan(data, from, to, false).lineEnds(to);
+    }
+
+    private Scan scan(byte[] data, int from, int to, boolean stopAtDelimiter) {
+        Scan scan = new Scan(from);
+        int state = 0;
+        int delimiterStart = -1;
+        int delimiter = -1;
+        for (int i = from; i < to; i++) {
+            // every delimiter starting at or before the best one has ended by now
+            if (stopAtDelimiter && delimiterStart >= 0 && i >= delimiterStart + maxDelimiterLength) break;
+            state = next[state][data[i] & 0xff];
+            for (int id : matches[state]) {
+                int start = i - lengths[id] + 1;
+                if (id < endingCount) {
+                    scan.addEnding(start, id, lengths[id]);
+                } else if (delimiterStart < 0 || start < delimiterStart || (start == delimiterStart && id < delimiter)) {
+                    delimiterStart = start;
+                    delimiter = id;
+                }
+            }
+        }
+        scan.delimiterStart = delimiterStart;
+        scan.headersEnd = delimiterStart < 0 ? -1 : delimiterStart + lengths[delimiter];
+        return scan;
+    }
+
+    static final class Scan {
+
+        private final int from;
+        private int delimiterStart;
+        private int headersEnd;
+        private int[] endings = new int[48];
+        private int size;
+
+        private Scan(int from) {
+            this.from = from;
+        }
+
+        // End of the header block including the delimiter, or -1 if the delimiter is not in the buffer
+        int headersEnd() {
+            return headersEnd;
+        }
+
+        // Where that delimiter starts, or -1
+        int delimiterStart() {
+            return delimiterStart;
+        }
+
+        // Where each line of data[from, limit) ends, matching a lazy regex over the endings in configured order
+        int[] lineEnds(int limit) {
+            int span = limit - from;
+            int[] best = new int[span];
+            int[] bestLength = new int[span];
+            Arrays.fill(best, Integer.MAX_VALUE);
+            for (int i = 0; i < size; i += 3) {
+                int start = endings[i], id = endings[i + 1], length = endings[i + 2];
+                if (start + length > limit || start < from) continue;
+                if (id < best[start - from]) {
+                    best[start - from] = id;
+                    bestLength[start - from] = length;
+                }
+            }
+            int[] ends = new int[8];
+            int count = 0;
+            int position = 0;
+            while (position < span) {
+                int start = position;
+                while (start < span && best[start] == Integer.MAX_VALUE) start++;
+                int end = start < span ? start + bestLength[start] : span;
+                if (count == ends.length) ends = Arrays.copyOf(ends, count * 2);
+                ends[count++] = from + end;
+                position = end;
+            }
+            return Arrays.copyOf(ends, count);
+        }
+
+        private void addEnding(int start, int id, int length) {
+            if (size + 3 > endings.length) endings = Arrays.copyOf(endings, endings.length * 2);
+            endings[size++] = start;
+            endings[size++] = id;
+            endings[size++] = length;
+        }
+    }
+
+    private static int[] newState() {
+        int[] state = new int[256];
+        Arrays.fill(state, -1);
+        return state;
+    }
+
+    private static int[] toArray(List<Integer> values) {
+        int[] result = new int[values.size()];
+        for (int i = 0; i < result.length; i++) result[i] = values.get(i);
+        return result;
+    }
+}
@@ -0,0 +1,69 @@
+package httpraider.parser;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// The header block of one request as offsets into the buffer being parsed, copied only when asked for
+public final class HeaderSlice {
+
+    private final byte[] data;
+    private final int start;
+    private final int end;
+    private final int delimiterStart;
+    private final int[] lineEnds;
+    private final List<String> lines;
+    private final String error;
+
+    HeaderSlice(byte[] data, int start, int end, int delimiterStart, int[] lineEnds, String error) {
+        this(data, start, end, delimiterStart, lineEnds, null, error);
+    }
+
+    HeaderSlice(byte[] data, int start, int end, int delimiterStart, List<String> lines, String error) {
+        this(data, start, end, delimiterStart, null, lines, error);
+    }
+
+    private HeaderSlice(byte[] data, int start, int end, int delimiterStart, int[] lineEnds, List<String> lines, String error) {
+        this.data = data;
+        this.start = start;
+        this.end = end;
+        this.delimiterStart = delimiterStart;
+        this.lineEnds = lineEnds;
+        this.lines = lines;
+        this.error = error;
+    }
+
+    public int start() { return start; }
+
+    // Exclusive; the end of the buffer when the header/body delimiter was not found
+    public int end() { return end; }
+
+    public int length() { return end - start; }
+
+    // Where the header/body delimiter that ends the block starts, or -1 when it was not found
+    public int delimiterStart() { return delimiterStart; }
+
+    public String error() { return error; }
+
+    public byte[] toByteArray() {
+        return Arrays.copyOfRange(data, start, end);
+    }
+
+    // A fresh, modifiable list each call
+    public List<String> lines() {
+        if (lines != null) return new ArrayList<>(lines);
+        List<String> result = new ArrayList<>(lineEnds.length);
+        int lineStart = start;
+        for (int lineEnd : lineEnds) {
+            result.add(new String(data, lineStart, lineEnd - lineStart, StandardCharsets.ISO_8859_1));
+            lineStart = lineEnd;
+        }
+        return result;
+    }
+
+    // Whether the table's header block is exactly the bytes of this block
+    public boolean matches(HeaderTable table) {
+        return Arrays.equals(data, start, end, table.block(), 0, table.length());
+    }
+}
@@ -0,0 +1,218 @@
+package httpraider.parser;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+// The header lines of one request as offsets into a single byte block: where each line, its name and its value
+// start and end, and a case-folded hash of each name. Stages look headers up and compare them in place instead of
+// building a String, or a lowercased copy, per line.
+public final class HeaderTable {
+
+    private final byte[] block;
+    private final int blockEnd;
+    private final List<String> lines;
+    // per line: start, end including its line ending, end without it, first ':' or -1, and the name's hash
+    private final int[] starts;
+    private final int[] ends;
+    private final int[] contentEnds;
+    private final int[] colons;
+    private final int[] nameHashes;
+
+    private static final byte[] CRLF = {'\r', '\n'};
+    private static final byte[] CRLF_CRLF = {'\r', '\n', '\r', '\n'};
+
+    private HeaderTable(byte[] block, int blockEnd, List<String> lines, int[] starts, int[] ends, int[] contentEnds) {
+        this.block = block;
+        this.blockEnd = blockEnd;
+        this.lines = lines;
+        this.starts = starts;
+        this.ends = ends;
+        this.contentEnds = contentEnds;
+        colons = new int[starts.length];
+        nameHashes = new int[starts.length];
+        for (int i = 0; i < starts.length; i++) {
+            int colon = -1;
+            int hash = 0;
+            for (int p = starts[i]; p < contentEnds[i]; p++) {
+                if (block[p] == ':') {
+                    colon = p;
+                    break;
+                }
+                hash = 31 * hash + fold(block[p]);
+            }
+            colons[i] = colon;
+            nameHashes[i] = colon >= 0 ? hash : 0;
+        }
+    }
+
+    // Lines as the parser carries them, each ending with its own line ending; the block is their bytes back to back
+    public static HeaderTable of(List<String> lines) {
+        int length = 0;
+        for (String line : lines) length += line.length();
+        byte[] block = new byte[length];
+        int[] starts = new int[lines.size()];
+        int[] ends = new int[lines.size()];
+        int[] contentEnds = new int[lines.size()];
+        int position = 0;
+        for (int i = 0; i < lines.size(); i++) {
+            String line = lines.get(i);
+            starts[i] = position;
+            if (isLatin1(line)) {
+                for (int c = 0; c < line.length(); c++) block[position++] = (byte) line.charAt(c);
+            } else {
+                // a script put in characters ISO-8859-1 can't encode; they go out as '?', as getBytes writes them
+                byte[] encoded = line.getBytes(StandardCharsets.ISO_8859_1);
+                block = Arrays.copyOf(block, block.length - line.length() + encoded.length);
+                System.arraycopy(encoded, 0, block, position, encoded.length);
+                position += encoded.length;
+            }
+            ends[i] = position;
+            int contentEnd = position;
+            while (contentEnd > starts[i] && (block[contentEnd - 1] == '\r' || block[contentEnd - 1] == '\n')) contentEnd--;
+            contentEnds[i] = contentEnd;
+        }
+        return new HeaderTable(block, position, lines, starts, ends, contentEnds);
+    }
+
+    // The headers of a raw request up to its first blank CRLF line, split on CRLF with trailing empty lines dropped,
+    // the way String.split("\r\n") cuts them
+    static HeaderTable ofCrlf(byte[] request) {
+        int headersEnd = ParserUtils.indexOf(request, CRLF_CRLF, 0);
+        if (headersEnd < 0) headersEnd = request.length;
+        int count = 1;
+        for (int p = ParserUtils.indexOf(request, CRLF, 0); p >= 0 && p < headersEnd; p = ParserUtils.indexOf(request, CRLF, p + 2)) {
+            count++;
+        }
+        int[] starts = new int[count];
+        int[] ends = new int[count];
+        int position = 0;
+        for (int i = 0; i < count; i++) {
+            int end = i < count - 1 ? ParserUtils.indexOf(request, CRLF, position) : headersEnd;
+            starts[i] = position;
+            ends[i] = end;
+            position = end + 2;
+        }
+        if (count > 1) {
+            while (count > 0 && starts[count - 1] == ends[count - 1]) count--;
+        }
+        int[] trimmedStarts = Arrays.copyOf(starts, count);
+        int[] trimmedEnds = Arrays.copyOf(ends, count);
+        return new HeaderTable(request, headersEnd, null, trimmedStarts, trimmedEnds, trimmedEnds.clone());
+    }
+
+    public int size() { return starts.length; }
+
+    // The lines the table was built from; null for a table cut out of raw bytes
+    public List<String> lines() { return lines; }
+
+    // The header block: block()[0, length()) for tables built from lines
+    public byte[] block() { return block; }
+    public int length() { return blockEnd; }
+
+    public int start(int line) { return starts[line]; }
+
+    // Including the line ending
+    public int end(int line) { return ends[line]; }
+
+    // Without the line ending
+    public int contentEnd(int line) { return contentEnds[line]; }
+
+    // Absolute offset of the line's first ':', or -1
+    public int colon(int line) { return colons[line]; }
+
+    public String line(int line) {
+        return new String(block, starts[line], ends[line] - starts[line], StandardCharsets.ISO_8859_1);
+    }
+
+    // Whether everything before the line's first ':' is the given name, ignoring ASCII case
+    public boolean nameIs(int line, String name) {
+        int colon = colons[line];
+        return colon >= 0 && nameHashes[line] == hash(name) && equalsIgnoreCase(starts[line], colon, name);
+    }
+
+    // The first line whose name is the given name, or -1
+    public int indexOf(String name) {
+        int hash = hash(name);
+        for (int i = 0; i < starts.length; i++) {
+            if (colons[i] >= 0 && nameHashes[i] == hash && equalsIgnoreCase(starts[i], colons[i], name)) return i;
+        }
+        return -1;
+    }
+
+    // Where String.trim would cut the range [from, to)
+    public int trimStart(int from, int to) {
+        while (from < to && (block[from] & 0xff) <= ' ') from++;
+        return from;
+    }
+
+    public int trimEnd(int from, int to) {
+        while (to > from && (block[to - 1] & 0xff) <= ' ') to--;
+        return to;
+    }
+
+    public boolean equals(int from, int to, String value) {
+        return to - from == value.length() && regionMatches(from, value, false);
+    }
+
+    public boolean startsWith(int from, int to, String prefix) {
+        return to - from >= prefix.length() && regionMatches(from, prefix, false);
+    }
+
+    public boolean endsWith(int from, int to, String suffix) {
+        return to - from >= suffix.length() && regionMatches(to - suffix.length(), suffix, false);
+    }
+
+    public boolean contains(int from, int to, String value) {
+        return indexOf(from, to, value, false) >= 0;
+    }
+
+    // Like toLowerCase().contains(value) for an ASCII lowercase value
+    public boolean containsIgnoreCase(int from, int to, String value) {
+        return indexOf(from, to, value, true) >= 0;
+    }
+
+    private int indexOf(int from, int to, String value, boolean ignoreCase) {
+        for (int p = from; p <= to - value.length(); p++) {
+            if (regionMatches(p, value, ignoreCase)) return p;
+        }
+        return -1;
+    }
+
+    private boolean regionMatches(int from, String value, boolean ignoreCase) {
+        for (int i = 0; i < value.length(); i++) {
+            int b = ignoreCase ? fold(block[from + i]) : block[from + i] & 0xff;
+            if (b != value.charAt(i)) return false;
+        }
+        return true;
+    }
+
+    private boolean equalsIgnoreCase(int from, int to, String name) {
+        if (to - from != name.length()) return false;
+        for (int i = 0; i < name.length(); i++) {
+            if (fold(block[from + i]) != fold(name.charAt(i))) return false;
+        }
+        return true;
+    }
+
+    static int hash(String name) {
+        int hash = 0;
+        for (int i = 0; i < name.length(); i++) hash = 31 * hash + fold(name.charAt(i));
+        return hash;
+    }
+
+    private static boolean isLatin1(String line) {
+        for (int c = 0; c < line.length(); c++) {
+            if (line.charAt(c) > 0xff) return false;
+        }
+        return true;
+    }
+
+    private static int fold(byte b) {
+        return fold((char) (b & 0xff));
+    }
+
+    private static int fold(char c) {
+        return c >= 'A' && c <= 'Z' ? c + 32 : c;
+    }
+}
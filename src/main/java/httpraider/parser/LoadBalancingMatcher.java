@@ -0,0 +1,267 @@
+package httpraider.parser;
+
+import httpraider.controller.engines.JSEngine;
+import httpraider.model.network.HeaderField;
+import httpraider.model.network.LoadBalancingRule;
+import httpraider.model.network.MatchMode;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.function.BiConsumer;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+// A proxy's enabled load balancing rules compiled once per edit of its settings. Patterns and modes are read and
+// body regexes compiled up front; the parts of a request the rules look at are cut out once per request, and only
+// when a rule asks for them.
+final class LoadBalancingMatcher {
+
+    private final List<Predicate<Request>> rules = new ArrayList<>();
+
+    LoadBalancingMatcher(List<LoadBalancingRule> enabledRules) {
+        for (LoadBalancingRule rule : enabledRules) rules.add(compile(rule));
+    }
+
+    int size() {
+        return rules.size();
+    }
+
+    // The first rule with a non-negative target that matches the request, or -1. A custom rule whose script runs past
+    // its budget is marked in stopped and skipped from then on, and what stopped it goes to onStopped.
+    int firstMatch(byte[] request, int[] targets, BitSet stopped, BiConsumer<Integer, String> onStopped) {
+        Request fields = null;
+        for (int r = 0; r < rules.size(); r++) {
+            if (targets[r] < 0 || stopped.get(r)) continue;
+            if (fields == null) fields = new Request(request);
+            try {
+                if (rules.get(r).test(fields)) return r;
+            } catch (JSEngine.ScriptBudgetExceeded ex) {
+                stopped.set(r);
+                onStopped.accept(r, ex.getMessage());
+            }
+        }
+        return -1;
+    }
+
+    private static Predicate<Request> compile(LoadBalancingRule rule) {
+        switch (rule.getRuleType()) {
+            case URL: {
+                String pattern = rule.getPattern();
+                MatchMode mode = rule.getMatchOption() != null ? rule.getMatchOption() : MatchMode.EXACT;
+                if (pattern == null) return request -> false;
+                return request -> request.url() != null && matches(mode, request.url(), pattern);
+            }
+            case HEADERS: {
+                HeaderField field = rule.getHeaderField();
+                if (field == HeaderField.NAME_VALUE) {
+                    String namePattern = rule.getHeaderNamePattern();
+                    String valuePattern = rule.getHeaderValuePattern();
+                    MatchMode nameMode = rule.getHeaderNameMatchMode();
+                    MatchMode valueMode = rule.getHeaderValueMatchMode();
+                    return request -> {
+                        HeaderTable headers = request.headers();
+                        for (int i = 0; i < headers.size(); i++) {
+                            if (headers.colon(i) > headers.start(i) && nameMatches(nameMode, headers, i, namePattern)
+                                    && valueMatches(valueMode, headers, i, valuePattern)) {
+                                return true;
+                            }
+                        }
+                        return false;
+                    };
+                }
+                String pattern = rule.getPattern();
+                MatchMode mode = rule.getMatchMode();
+                return request -> {
+                    HeaderTable headers = request.headers();
+                    for (int i = 0; i < headers.size(); i++) {
+                        boolean named = headers.colon(i) > headers.start(i);
+                        if (field == HeaderField.NAME && named && nameMatches(mode, headers, i, pattern)) return true;
+                        if (field == HeaderField.VALUE && named && valueMatches(mode, headers, i, pattern)) return true;
+                        if (field == HeaderField.HEADER_LINE && matches(mode, headers, headers.start(i), headers.end(i), pattern)) {
+                            return true;
+                        }
+                    }
+                    return false;
+                };
+            }
+            case HOST: {
+                String pattern = rule.getHostPattern();
+                MatchMode mode = rule.getHostMatchMode();
+                if (pattern == null || mode == null) return request -> false;
+                return request -> {
+                    HeaderTable headers = request.headers();
+                    for (int i = 0; i < headers.size(); i++) {
+                        if (headers.nameIs(i, "host") && valueMatches(mode, headers, i, pattern)) return true;
+                    }
+                    return false;
+                };
+            }
+            case COOKIES: {
+                String namePattern = rule.getCookieNamePattern();
+                String valuePattern = rule.getCookieValuePattern();
+                MatchMode nameMode = rule.getCookieNameMatchMode();
+                MatchMode valueMode = rule.getCookieValueMatchMode();
+                return request -> {
+                    HeaderTable headers = request.headers();
+                    for (int i = 0; i < headers.size(); i++) {
+                        if (!headers.nameIs(i, "cookie")) continue;
+                        int from = headers.trimStart(headers.colon(i) + 1, headers.end(i));
+                        String cookies = new String(headers.block(), from, headers.trimEnd(from, headers.end(i)) - from,
+                                StandardCharsets.ISO_8859_1);
+                        for (String cookie : cookies.split(";")) {
+                            String[] kv = cookie.trim().split("=", 2);
+                            String name = kv.length > 0 ? kv[0].trim() : "";
+                            String value = kv.length > 1 ? kv[1].trim() : "";
+                            if (matches(nameMode, name, namePattern) && matches(valueMode, value, valuePattern)) return true;
+                        }
+                    }
+                    return false;
+                };
+            }
+            case METHOD: {
+                String pattern = rule.getPattern();
+                if (pattern == null) return request -> false;
+                return request -> {
+                    if (request.lines().isEmpty()) return false;
+                    String[] parts = request.lines().get(0).split(" ");
+                    return parts.length > 0 && parts[0].equalsIgnoreCase(pattern);
+                };
+            }
+            case BODY: {
+                if (rule.getPattern() == null) return request -> false;
+                Pattern pattern;
+                try {
+                    pattern = Pattern.compile(rule.getPattern());
+                } catch (PatternSyntaxException e) {
+                    return request -> false;
+                }
+                return request -> pattern.matcher(request.body()).matches();
+            }
+            case CUSTOM: {
+                String jsCode = rule.getJsCode();
+                if (jsCode == null || jsCode.trim().isEmpty()) return request -> false;
+                return request -> evaluateJsRule(jsCode, request.headersBlock(), request.body());
+            }
+            default:
+                return request -> false;
+        }
+    }
+
+    private static boolean matches(MatchMode mode, String value, String pattern) {
+        if (mode == null || pattern == null) return false;
+        switch (mode) {
+            case PREFIX:    return value.startsWith(pattern);
+            case SUFFIX:    return value.endsWith(pattern);
+            case EXACT:     return value.equals(pattern);
+            case ANY_MATCH: return value.contains(pattern);
+            default:        return false;
+        }
+    }
+
+    // The header's name or value trimmed, compared in place in the table's block
+    private static boolean nameMatches(MatchMode mode, HeaderTable headers, int line, String pattern) {
+        int from = headers.trimStart(headers.start(line), headers.colon(line));
+        return matches(mode, headers, from, headers.trimEnd(from, headers.colon(line)), pattern);
+    }
+
+    private static boolean valueMatches(MatchMode mode, HeaderTable headers, int line, String pattern) {
+        int from = headers.trimStart(headers.colon(line) + 1, headers.end(line));
+        return matches(mode, headers, from, headers.trimEnd(from, headers.end(line)), pattern);
+    }
+
+    private static boolean matches(MatchMode mode, HeaderTable headers, int from, int to, String pattern) {
+        if (mode == null || pattern == null) return false;
+        switch (mode) {
+            case PREFIX:    return headers.startsWith(from, to, pattern);
+            case SUFFIX:    return headers.endsWith(from, to, pattern);
+            case EXACT:     return headers.equals(from, to, pattern);
+            case ANY_MATCH: return headers.contains(from, to, pattern);
+            default:        return false;
+        }
+    }
+
+    private static boolean evaluateJsRule(String jsCode, String headersBlock, String body) {
+        try {
+            Object res = JSEngine.runJsBooleanRule(jsCode, headersBlock, body);
+            if (res instanceof Boolean) return (Boolean) res;
+            if (res instanceof String) return Boolean.parseBoolean((String) res);
+            return false;
+        } catch (Exception ex) {
+            return false;
+        }
+    }
+
+    // The parts of one request the rules read, cut the way the rules have always seen them: the headers end at the
+    // first blank CRLF line and are split on CRLF
+    private static final class Request {
+
+        private final byte[] raw;
+        private String headersBlock;
+        private String body;
+        private List<String> lines;
+        private HeaderTable headers;
+        private boolean urlDone;
+        private String url;
+
+        private Request(byte[] raw) {
+            this.raw = raw;
+        }
+
+        String headersBlock() {
+            if (headersBlock == null) {
+                String text = new String(raw, StandardCharsets.ISO_8859_1);
+                int end = text.indexOf("\r\n\r\n");
+                headersBlock = end >= 0 ? text.substring(0, end) : text;
+                body = end >= 0 ? text.substring(end + 4) : "";
+            }
+            return headersBlock;
+        }
+
+        String body() {
+            headersBlock();
+            return body;
+        }
+
+        // Like headersBlock().split("\r\n"): trailing empty lines dropped
+        List<String> lines() {
+            if (lines == null) {
+                String block = headersBlock();
+                lines = new ArrayList<>();
+                int start = 0;
+                int end;
+                while ((end = block.indexOf("\r\n", start)) >= 0) {
+                    lines.add(block.substring(start, end));
+                    start = end + 2;
+                }
+                if (lines.isEmpty()) {
+                    lines.add(block);
+                } else {
+                    lines.add(block.substring(start));
+                    while (!lines.isEmpty() && lines.get(lines.size() - 1).isEmpty()) lines.remove(lines.size() - 1);
+                }
+            }
+            return lines;
+        }
+
+        // The same lines as offsets into the raw request
+        HeaderTable headers() {
+            if (headers == null) headers = HeaderTable.ofCrlf(raw);
+            return headers;
+        }
+
+        // The second space separated part of the request line, or null
+        String url() {
+            if (!urlDone) {
+                String block = headersBlock();
+                int end = block.indexOf("\r\n");
+                String[] parts = (end >= 0 ? block.substring(0, end) : block).split(" ");
+                url = parts.length > 1 ? parts[1] : null;
+                urlDone = true;
+            }
+            return url;
+        }
+    }
+}
@@ -1,28 +1,84 @@
 package httpraider.parser;
 
+import java.util.Arrays;
 import java.util.List;
 
 public class MessageLengthHeaderResult {
     private final List<String> headerLines;
-    private final byte[] body;
-    private final byte[] remaining;
+    private final byte[] source;
+    private final int bodyStart;
+    private final int bodyEnd;
+    private final int end;
+    private byte[] body;
+    private byte[] remaining;
     private final String error;
     private final int incompleteBodyBytes;
     private final String chunkedIncompleteTag;
+    private final boolean openEnded;
 
     public MessageLengthHeaderResult(List<String> headerLines, byte[] body, byte[] remaining, String error, int incompleteBodyBytes, String chunkedIncompleteTag) {
         this.headerLines = headerLines;
+        this.source = null;
+        this.bodyStart = -1;
+        this.bodyEnd = -1;
+        this.end = -1;
         this.body = body;
         this.remaining = remaining;
         this.error = error;
         this.incompleteBodyBytes = incompleteBodyBytes;
         this.chunkedIncompleteTag = chunkedIncompleteTag;
+        this.openEnded = false;
+    }
+
+    // Body and remaining left in source: the body is source[bodyStart, bodyEnd), or decodedBody when bodyStart is -1,
+    // and whatever follows the request starts at end
+    MessageLengthHeaderResult(List<String> headerLines, byte[] source, int bodyStart, int bodyEnd, byte[] decodedBody, int end,
+                              String error, int incompleteBodyBytes) {
+        this(headerLines, source, bodyStart, bodyEnd, decodedBody, end, error, incompleteBodyBytes, false);
+    }
+
+    // openEnded: the body ran into the end of source, so bytes appended to it could still change the result
+    MessageLengthHeaderResult(List<String> headerLines, byte[] source, int bodyStart, int bodyEnd, byte[] decodedBody, int end,
+                              String error, int incompleteBodyBytes, boolean openEnded) {
+        this.headerLines = headerLines;
+        this.source = source;
+        this.bodyStart = bodyStart;
+        this.bodyEnd = bodyEnd;
+        this.end = end;
+        this.body = decodedBody;
+        this.error = error;
+        this.incompleteBodyBytes = incompleteBodyBytes;
+        this.chunkedIncompleteTag = null;
+        this.openEnded = openEnded;
     }
 
     public List<String> getHeaderLines() { return headerLines; }
-    public byte[] getBody() { return body; }
-    public byte[] getRemaining() { return remaining; }
     public String getError() { return error; }
     public int getIncompleteBodyBytes() { return incompleteBodyBytes; }
     public String getChunkedIncompleteTag() { return chunkedIncompleteTag; }
+
+    public byte[] getBody() {
+        if (body == null) body = Arrays.copyOfRange(source, bodyStart, bodyEnd);
+        return body;
+    }
+
+    public byte[] getRemaining() {
+        if (remaining == null) remaining = Arrays.copyOfRange(source, end, source.length);
+        return remaining;
+    }
+
+    public int getBodyLength() {
+        return body != null ? body.length : bodyEnd - bodyStart;
+    }
+
+    // Offset in the source buffer right after this request; -1 for results built from copies
+    public int getEnd() { return end; }
+
+    // Whether the body is still the untouched bytes of the source buffer, and where they are
+    public boolean isSourceBody() { return bodyStart >= 0; }
+    public int getBodyStart() { return bodyStart; }
+    public int getBodyEnd() { return bodyEnd; }
+
+    // Whether appending bytes to the source could still change this result
+    public boolean isSettled() { return incompleteBodyBytes == 0 && !openEnded; }
 }
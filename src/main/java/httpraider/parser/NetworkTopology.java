@@ -0,0 +1,209 @@
+package httpraider.parser;
+
+import httpraider.controller.NetworkController;
+import httpraider.model.network.ConnectionModel;
+import httpraider.model.network.LoadBalancingRule;
+import httpraider.model.network.NetworkModel;
+import httpraider.model.network.ProxyModel;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+// The network as the chain simulation walks it, indexed once per run: proxies by int id, the proxies each one
+// forwards to, and the proxy each of its enabled load balancing rules sends to
+final class NetworkTopology {
+
+    private final ProxyModel[] proxies;
+    private final Map<String, Integer> ids;
+    private final int client;
+    private final int[][] forward;
+    private final LoadBalancingMatcher[] rules;
+    private final int[][] ruleTargets;
+
+    private NetworkTopology(Collection<ProxyModel> models, Set<ConnectionModel> connections) {
+        proxies = models.toArray(new ProxyModel[0]);
+        ids = new HashMap<>();
+        int clientId = -1;
+        for (int i = 0; i < proxies.length; i++) {
+            ids.put(proxies[i].getId(), i);
+            if (clientId < 0 && proxies[i].isClient()) clientId = i;
+        }
+        client = clientId;
+
+        // same sets, filled in the same order, as NetworkController.getDirectConnections so the first forward
+        // connection stays the same proxy
+        List<Set<String>> neighbours = new ArrayList<>();
+        for (int i = 0; i < proxies.length; i++) neighbours.add(new HashSet<>());
+        for (ConnectionModel c : connections) {
+            Integer from = ids.get(c.getFromId());
+            Integer to = ids.get(c.getToId());
+            if (from != null) neighbours.get(from).add(c.getToId());
+            if (to != null && !c.getToId().equals(c.getFromId())) neighbours.get(to).add(c.getFromId());
+        }
+
+        forward = new int[proxies.length][];
+        rules = new LoadBalancingMatcher[proxies.length];
+        ruleTargets = new int[proxies.length][];
+        for (int i = 0; i < proxies.length; i++) {
+            int[] next = new int[neighbours.get(i).size()];
+            int count = 0;
+            for (String id : neighbours.get(i)) {
+                Integer neighbour = ids.get(id);
+                if (neighbour != null && !proxies[neighbour].isClient()) next[count++] = neighbour;
+            }
+            forward[i] = Arrays.copyOf(next, count);
+
+            ParserPlan plan = ParserPlan.of(proxies[i].getParserSettings());
+            List<LoadBalancingRule> proxyRules = plan.loadBalancingRules();
+            rules[i] = plan.loadBalancingMatcher();
+            ruleTargets[i] = new int[proxyRules.size()];
+            for (int r = 0; r < proxyRules.size(); r++) {
+                ruleTargets[i][r] = targetOf(proxyRules.get(r).getForwardToProxyId(), forward[i]);
+            }
+        }
+    }
+
+    static NetworkTopology of(NetworkController networkController) {
+        return of(networkController.getModel());
+    }
+
+    static NetworkTopology of(NetworkModel model) {
+        return new NetworkTopology(model.getProxies(), model.getConnections());
+    }
+
+    int size() { return proxies.length; }
+
+    ProxyModel proxy(int id) { return proxies[id]; }
+
+    // -1 if the proxy is not in the network
+    int id(ProxyModel proxy) {
+        Integer id = ids.get(proxy.getId());
+        return id != null ? id : -1;
+    }
+
+    // -1 without a client
+    int client() { return client; }
+
+    // Directly connected proxies other than the client
+    int[] forward(int id) { return forward[id]; }
+
+    // The proxy's enabled load balancing rules, compiled
+    LoadBalancingMatcher rules(int id) { return rules[id]; }
+
+    // Per rule, the proxy it forwards to, or -1 when that proxy is not one of the forward connections
+    int[] ruleTargets(int id) { return ruleTargets[id]; }
+
+    Walk walk(byte[] payload) {
+        return new Walk(payload, new StoppedRules());
+    }
+
+    // A walk that skips the rules stopped in earlier walks, and stops more in the same set
+    Walk walk(byte[] payload, StoppedRules stopped) {
+        return new Walk(payload, stopped);
+    }
+
+    private int targetOf(String proxyId, int[] candidates) {
+        if (proxyId == null) return -1;
+        for (int candidate : candidates) {
+            if (proxies[candidate].getId().equals(proxyId)) return candidate;
+        }
+        return -1;
+    }
+
+    // One BFS from the client: a proxy is queued at most once, and only what reached it before that is kept
+    final class Walk {
+
+        private final boolean[] processed = new boolean[proxies.length];
+        private final boolean[] queued = new boolean[proxies.length];
+        private final int[] queue = new int[proxies.length];
+        private final List<List<byte[]>> payloads = new ArrayList<>(Collections.nCopies(proxies.length, null));
+        private final StoppedRules stopped;
+        private int head;
+        private int tail;
+
+        private Walk(byte[] payload, StoppedRules stopped) {
+            this.stopped = stopped;
+            List<byte[]> initial = new ArrayList<>();
+            initial.add(payload);
+            payloads.set(client, initial);
+            queued[client] = true;
+            queue[tail++] = client;
+        }
+
+        boolean hasNext() { return head < tail; }
+
+        // The proxies queued right now, in order; they all have every payload they will get
+        int[] wave() { return Arrays.copyOfRange(queue, head, tail); }
+
+        int poll() {
+            int id = queue[head++];
+            queued[id] = false;
+            processed[id] = true;
+            return id;
+        }
+
+        // Null if nothing reached the proxy
+        List<byte[]> payloads(int id) { return payloads.get(id); }
+
+        StoppedRules stopped() { return stopped; }
+
+        void offer(int id, List<byte[]> requests) {
+            if (processed[id] || queued[id]) return;
+            payloads(id, requests.size()).addAll(requests);
+            queued[id] = true;
+            queue[tail++] = id;
+        }
+
+        void offer(int id, byte[] request) {
+            if (processed[id] || queued[id]) return;
+            payloads(id, 1).add(request);
+            queued[id] = true;
+            queue[tail++] = id;
+        }
+
+        private List<byte[]> payloads(int id, int expected) {
+            List<byte[]> list = payloads.get(id);
+            if (list == null) {
+                list = new ArrayList<>(expected);
+                payloads.set(id, list);
+            }
+            return list;
+        }
+    }
+
+    // Custom load balancing rules whose script ran past its budget: each is skipped for the rest of the simulation
+    // instead of spending the whole budget again on every request routed, and leaves a parsing_error on its proxy.
+    // Parser settings with a script that ran past its budget are likewise not parsed with again.
+    static final class StoppedRules {
+
+        // keyed by the compiled rules, so editing a proxy's settings runs its rules again
+        private final Map<LoadBalancingMatcher, BitSet> stopped = new WeakHashMap<>();
+        private final Map<ParserPlan, String> stoppedParsers = new WeakHashMap<>();
+        private final Map<String, List<byte[]>> errors = new HashMap<>();
+
+        synchronized BitSet of(LoadBalancingMatcher rules) {
+            return stopped.computeIfAbsent(rules, r -> new BitSet());
+        }
+
+        synchronized void stop(ProxyModel proxy, int rule, String message) {
+            String tag = "<parsing_error:\"Load balancing rule " + (rule + 1) + " skipped for the rest of the run: " + message + "\">";
+            errors.computeIfAbsent(proxy.getId(), id -> new ArrayList<>()).add(tag.getBytes(StandardCharsets.ISO_8859_1));
+        }
+
+        // The error the settings' script stopped with, or null while they still parse
+        synchronized String parserStopped(ParserPlan plan) {
+            return stoppedParsers.get(plan);
+        }
+
+        synchronized void stopParser(ParserPlan plan, String message) {
+            stoppedParsers.putIfAbsent(plan, message);
+        }
+
+        // The errors left on the proxy, as one more group for its view; empty when there are none
+        synchronized List<List<byte[]>> errorGroups(ProxyModel proxy) {
+            List<byte[]> proxyErrors = errors.get(proxy.getId());
+            if (proxyErrors == null) return List.of();
+            return List.of(List.copyOf(proxyErrors));
+        }
+    }
+}
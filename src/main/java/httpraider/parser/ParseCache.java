@@ -0,0 +1,99 @@
+package httpraider.parser;
+
+import httpraider.model.network.HttpParserModel;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.*;
+import java.util.function.Supplier;
+
+// Recently parsed payloads per parser settings, so a Test run only re-parses the proxies whose settings or input
+// changed. Entries are keyed by the model, its edit version and the payload's contents, and evicted least recently
+// used first once either limit is passed. Keys hold their model weakly: once a closed session's settings are
+// collected, its entries are dropped on the next lookup. A parse stopped by a script budget is never kept, since
+// the same script may finish on a less loaded machine.
+final class ParseCache {
+
+    private static final int MAX_ENTRIES = 512;
+    private static final long MAX_BYTES = 64L * 1024 * 1024;
+
+    private static final LinkedHashMap<Key, ParserChainRunner.ParsedStream> ENTRIES = new LinkedHashMap<>(64, 0.75f, true);
+    private static final ReferenceQueue<HttpParserModel> COLLECTED = new ReferenceQueue<>();
+    private static long bytes;
+
+    private ParseCache() {}
+
+    static ParserChainRunner.ParsedStream get(HttpParserModel model, byte[] payload, boolean includeIncomplete,
+                                              Supplier<ParserChainRunner.ParsedStream> parse) {
+        Key key = new Key(model, model.getVersion(), includeIncomplete, payload);
+        synchronized (ENTRIES) {
+            expunge();
+            ParserChainRunner.ParsedStream cached = ENTRIES.get(key);
+            if (cached != null) return cached;
+        }
+        // parsed outside the lock so parallel proxies don't wait on each other; a racing duplicate is harmless
+        ParserChainRunner.ParsedStream parsed = parse.get();
+        if (parsed.overrun() != null) return parsed;
+        parsed = new ParserChainRunner.ParsedStream(List.copyOf(parsed.requests()), parsed.settled(), parsed.settledEnd(),
+                parsed.closed(), null);
+        long size = sizeOf(key, parsed);
+        if (size > MAX_BYTES / 4) return parsed;
+        synchronized (ENTRIES) {
+            ParserChainRunner.ParsedStream previous = ENTRIES.put(key, parsed);
+            bytes += size - (previous != null ? sizeOf(key, previous) : 0);
+            Iterator<Map.Entry<Key, ParserChainRunner.ParsedStream>> eldest = ENTRIES.entrySet().iterator();
+            while ((ENTRIES.size() > MAX_ENTRIES || bytes > MAX_BYTES) && eldest.hasNext()) {
+                Map.Entry<Key, ParserChainRunner.ParsedStream> entry = eldest.next();
+                bytes -= sizeOf(entry.getKey(), entry.getValue());
+                eldest.remove();
+            }
+        }
+        return parsed;
+    }
+
+    private static void expunge() {
+        for (Reference<? extends HttpParserModel> collected; (collected = COLLECTED.poll()) != null; ) {
+            ParserChainRunner.ParsedStream parsed = ENTRIES.remove(collected);
+            if (parsed != null) bytes -= sizeOf((Key) collected, parsed);
+        }
+    }
+
+    private static long sizeOf(Key key, ParserChainRunner.ParsedStream parsed) {
+        long size = key.payload.length;
+        for (byte[] request : parsed.requests()) size += request.length;
+        return size;
+    }
+
+    private static final class Key extends WeakReference<HttpParserModel> {
+
+        private final int version;
+        private final boolean includeIncomplete;
+        private final byte[] payload;
+        private final int hash;
+
+        private Key(HttpParserModel model, int version, boolean includeIncomplete, byte[] payload) {
+            super(model, COLLECTED);
+            this.version = version;
+            this.includeIncomplete = includeIncomplete;
+            this.payload = payload;
+            this.hash = 31 * (31 * (31 * System.identityHashCode(model) + version) + Boolean.hashCode(includeIncomplete))
+                    + Arrays.hashCode(payload);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            // a collected model's key only still equals itself, which is how expunge finds it
+            if (o == this) return true;
+            if (!(o instanceof Key other)) return false;
+            HttpParserModel model = get();
+            return model != null && model == other.get() && version == other.version && includeIncomplete == other.includeIncomplete
+                    && hash == other.hash && Arrays.equals(payload, other.payload);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package httpraider.parser;
 
+import httpraider.controller.engines.ByteView;
 import httpraider.controller.engines.JSEngine;
 import httpraider.model.network.*;
 import httpraider.controller.NetworkController;
@@ -7,7 +8,7 @@ import httpraider.controller.NetworkController;
 import java.io.ByteArrayOutputStream;
 import java.nio.charset.StandardCharsets;
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.concurrent.*;
 
 public class ParserChainRunner {
 
@@ -33,136 +34,103 @@ public class ParserChainRunner {
             byte[] payload,
             NetworkController networkController
     ) {
-        // Find the client proxy to start from
-        ProxyModel clientProxy = null;
-        for (ProxyModel proxy : networkController.getModel().getProxies()) {
-            if (proxy.isClient()) {
-                clientProxy = proxy;
-                break;
-            }
-        }
-        
-        if (clientProxy == null) {
+        return parseFinalGroupsForPanels(List.of(currentProxy), payload, networkController, Runnable::run).get(currentProxy);
+    }
+
+    // The groups of every target from a single simulation of the network. Proxies the BFS reaches in the same wave
+    // are parsed in parallel on the executor and then routed in BFS order, so results match one run per target.
+    public static Map<ProxyModel, List<List<byte[]>>> parseFinalGroupsForPanels(
+            Collection<ProxyModel> targets,
+            byte[] payload,
+            NetworkController networkController,
+            Executor executor
+    ) {
+        Map<ProxyModel, List<List<byte[]>>> results = new LinkedHashMap<>();
+
+        NetworkTopology topology = NetworkTopology.of(networkController);
+
+        if (topology.client() < 0) {
             // No client proxy found, parse directly
-            List<List<byte[]>> groups = new ArrayList<>();
-            List<byte[]> requests = parseRequestsForProxyRaw(currentProxy.getParserSettings(), payload);
-            if (!requests.isEmpty()) {
-                groups.add(requests);
+            List<Callable<List<List<byte[]>>>> jobs = new ArrayList<>();
+            NetworkTopology.StoppedRules stopped = new NetworkTopology.StoppedRules();
+            for (ProxyModel target : targets) {
+                jobs.add(() -> {
+                    List<List<byte[]>> groups = new ArrayList<>();
+                    List<byte[]> requests = cachedParse(target.getParserSettings(), payload, true, stopped);
+                    if (!requests.isEmpty()) {
+                        groups.add(requests);
+                    }
+                    return groups;
+                });
             }
-            return groups;
+            List<List<List<byte[]>>> parsed = runAll(jobs, executor);
+            int i = 0;
+            for (ProxyModel target : targets) results.put(target, parsed.get(i++));
+            return results;
         }
 
         // BFS to process all paths from client
-        // Map: proxyId -> list of byte arrays (requests) that reached this proxy
-        Map<String, List<byte[]>> proxyPayloads = new HashMap<>();
-        proxyPayloads.put(clientProxy.getId(), Arrays.asList(payload));
-        
-        // Queue for BFS: contains proxy IDs to process
-        Queue<String> toProcess = new LinkedList<>();
-        toProcess.add(clientProxy.getId());
-        Set<String> processed = new HashSet<>();
-        
-        while (!toProcess.isEmpty()) {
-            String proxyId = toProcess.poll();
-            if (processed.contains(proxyId)) continue;
-            processed.add(proxyId);
-            
-            ProxyModel proxy = networkController.getModel().getProxy(proxyId);
-            if (proxy == null) continue;
-            
-            List<byte[]> payloadsForThisProxy = proxyPayloads.get(proxyId);
-            if (payloadsForThisProxy == null || payloadsForThisProxy.isEmpty()) continue;
-            
-            // Get forward connections (excluding client)
-            List<ProxyModel> forwardConnections = networkController.getDirectConnections(proxyId)
-                .stream()
-                .filter(p -> !p.isClient())
-                .collect(Collectors.toList());
-            
-            if (forwardConnections.isEmpty()) continue;
-            
-            // Check if proxy has enabled rules
-            List<LoadBalancingRule> rules = proxy.getParserSettings().getLoadBalancingRules();
-            boolean hasEnabledRules = false;
-            if (rules != null) {
-                for (LoadBalancingRule rule : rules) {
-                    if (rule.isEnabled()) {
-                        hasEnabledRules = true;
-                        break;
-                    }
-                }
-            }
-            
-            // Process each payload through this proxy
-            for (byte[] data : payloadsForThisProxy) {
-                List<byte[]> allRequests;
-                
-                // Client doesn't parse - it just forwards the raw payload
-                if (proxy.isClient()) {
-                    allRequests = Arrays.asList(data);
-                } else {
-                    // Parse requests but DON'T forward incomplete for intermediate proxies
-                    allRequests = parseRequestsForProxyRaw(proxy.getParserSettings(), data, false);
-                }
-                
-                if (forwardConnections.size() == 1 && !hasEnabledRules) {
-                    // Single forward connection and no rules: forward everything
-                    ProxyModel nextProxy = forwardConnections.get(0);
-                    // Only add if not already processed or queued to prevent cycles
-                    if (!processed.contains(nextProxy.getId()) && !toProcess.contains(nextProxy.getId())) {
-                        proxyPayloads.computeIfAbsent(nextProxy.getId(), k -> new ArrayList<>())
-                                    .addAll(allRequests);
-                        toProcess.add(nextProxy.getId());
-                    }
-                } else if (hasEnabledRules) {
-                    // Has rules: check each request against rules
-                    for (byte[] req : allRequests) {
-                        boolean forwarded = false;
-                        
-                        // Check rules for this request
-                        for (LoadBalancingRule rule : rules) {
-                            if (!rule.isEnabled()) continue;
-                            String targetProxyId = rule.getForwardToProxyId();
-                            if (targetProxyId == null) continue;
-                            
-                            // Check if target is in forward connections
-                            ProxyModel targetProxy = forwardConnections.stream()
-                                .filter(p -> p.getId().equals(targetProxyId))
-                                .findFirst()
-                                .orElse(null);
-                            
-                            if (targetProxy != null && ruleMatchesRequest(rule, req)) {
-                                // Only add if not already processed or queued to prevent cycles
-                                if (!processed.contains(targetProxyId) && !toProcess.contains(targetProxyId)) {
-                                    proxyPayloads.computeIfAbsent(targetProxyId, k -> new ArrayList<>())
-                                                .add(req);
-                                    toProcess.add(targetProxyId);
-                                }
-                                forwarded = true;
-                                break; // First matching rule wins
-                            }
+        NetworkTopology.Walk walk = topology.walk(payload);
+        while (walk.hasNext()) {
+            // Everything queued now has all the payloads it will get, so the whole wave can be parsed at once
+            int[] wave = walk.wave();
+            int[] waveJobs = new int[wave.length];
+            List<Callable<List<List<byte[]>>>> jobs = new ArrayList<>();
+            for (int w = 0; w < wave.length; w++) {
+                waveJobs[w] = -1;
+                ProxyModel proxy = topology.proxy(wave[w]);
+                List<byte[]> payloadsForThisProxy = walk.payloads(wave[w]);
+                if (payloadsForThisProxy == null || payloadsForThisProxy.isEmpty()) continue;
+                if (topology.forward(wave[w]).length == 0) continue;
+
+                waveJobs[w] = jobs.size();
+                jobs.add(() -> {
+                    List<List<byte[]>> perPayload = new ArrayList<>();
+                    for (byte[] data : payloadsForThisProxy) {
+                        // Client doesn't parse - it just forwards the raw payload
+                        if (proxy.isClient()) {
+                            perPayload.add(Arrays.asList(data));
+                        } else {
+                            // Parse requests but DON'T forward incomplete for intermediate proxies
+                            perPayload.add(cachedParse(proxy.getParserSettings(), data, false, walk.stopped()));
                         }
-                        
-                        // If no rule matched, don't forward (when rules are enabled)
-                    }
-                } else if (forwardConnections.size() > 1) {
-                    // Multiple connections but no rules: this is likely a configuration error
-                    // Forward to first connection only to avoid duplication
-                    ProxyModel nextProxy = forwardConnections.get(0);
-                    // Only add if not already processed or queued to prevent cycles
-                    if (!processed.contains(nextProxy.getId()) && !toProcess.contains(nextProxy.getId())) {
-                        proxyPayloads.computeIfAbsent(nextProxy.getId(), k -> new ArrayList<>())
-                                    .addAll(allRequests);
-                        toProcess.add(nextProxy.getId());
                     }
+                    return perPayload;
+                });
+            }
+            List<List<List<byte[]>>> parsed = runAll(jobs, executor);
+
+            for (int w = 0; w < wave.length; w++) {
+                int proxyId = walk.poll();
+                if (waveJobs[w] < 0) continue;
+                // Route each payload's requests through this proxy
+                for (List<byte[]> allRequests : parsed.get(waveJobs[w])) {
+                    forward(topology, walk, proxyId, allRequests);
                 }
             }
         }
-        
-        // Get the payloads that reached the target proxy
-        List<byte[]> targetPayloads = proxyPayloads.getOrDefault(currentProxy.getId(), new ArrayList<>());
-        
-        // Parse the final requests for display (unless it's the client proxy)
+
+        List<Callable<List<List<byte[]>>>> jobs = new ArrayList<>();
+        for (ProxyModel target : targets) {
+            // Get the payloads that reached the target proxy
+            int id = topology.id(target);
+            List<byte[]> reached = id >= 0 ? walk.payloads(id) : null;
+            List<byte[]> targetPayloads = reached != null ? reached : new ArrayList<>();
+            jobs.add(() -> finalGroups(target, targetPayloads, walk.stopped()));
+        }
+        List<List<List<byte[]>>> parsed = runAll(jobs, executor);
+        int i = 0;
+        for (ProxyModel target : targets) {
+            List<List<byte[]>> groups = parsed.get(i++);
+            groups.addAll(walk.stopped().errorGroups(target));
+            results.put(target, groups);
+        }
+        return results;
+    }
+
+    // Parse the final requests for display (unless it's the client proxy)
+    private static List<List<byte[]>> finalGroups(ProxyModel currentProxy, List<byte[]> targetPayloads,
+                                                  NetworkTopology.StoppedRules stopped) {
         List<List<byte[]>> finalGroups = new ArrayList<>();
         if (currentProxy.isClient()) {
             // Client proxy should never parse - just return the raw payloads
@@ -189,7 +157,7 @@ public class ParserChainRunner {
                 }
                 
                 // Parse the concatenated data as one continuous stream
-                List<byte[]> requests = parseRequestsForProxyRaw(currentProxy.getParserSettings(), concatenatedData, false);
+                List<byte[]> requests = cachedParse(currentProxy.getParserSettings(), concatenatedData, false, stopped);
                 if (!requests.isEmpty()) {
                     finalGroups.add(requests);
                 }
@@ -199,7 +167,76 @@ public class ParserChainRunner {
         return finalGroups;
     }
 
+    // A proxy whose settings and input are unchanged since an earlier run gets that run's requests back. Once a
+    // script of the settings ran past its budget, the rest of the simulation skips parsing with them
+    private static List<byte[]> cachedParse(HttpParserModel model, byte[] data, boolean includeIncomplete,
+                                            NetworkTopology.StoppedRules stopped) {
+        ParserPlan plan = ParserPlan.of(model);
+        String overrun = stopped.parserStopped(plan);
+        if (overrun != null) {
+            String tag = "<parsing_error:\"" + overrun + "; not parsed again for the rest of the run\">";
+            return List.of(concat(tag.getBytes(StandardCharsets.ISO_8859_1), data));
+        }
+        ParsedStream parsed = ParseCache.get(model, data, includeIncomplete, () -> parseStream(model, data, includeIncomplete));
+        if (parsed.overrun() != null) stopped.stopParser(plan, parsed.overrun());
+        return parsed.requests();
+    }
+
+    // Runs the jobs on the executor; the calling thread takes any job no worker has started yet, so a busy or
+    // shut down executor only makes this slower
+    private static <T> List<T> runAll(List<Callable<T>> jobs, Executor executor) {
+        List<FutureTask<T>> tasks = new ArrayList<>(jobs.size());
+        for (Callable<T> job : jobs) {
+            FutureTask<T> task = new FutureTask<>(job);
+            tasks.add(task);
+            if (jobs.size() > 1) {
+                try {
+                    executor.execute(task);
+                } catch (RejectedExecutionException ignored) {
+                }
+            }
+        }
+        List<T> results = new ArrayList<>(tasks.size());
+        for (FutureTask<T> task : tasks) {
+            task.run();
+            try {
+                results.add(task.get());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new CancellationException("Interrupted while parsing");
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof RuntimeException runtime) throw runtime;
+                if (e.getCause() instanceof Error error) throw error;
+                throw new IllegalStateException(e.getCause());
+            }
+        }
+        return results;
+    }
 
+    // Hands the requests a proxy let through to the next proxies, skipping any already processed or queued
+    static void forward(NetworkTopology topology, NetworkTopology.Walk walk, int proxyId, List<byte[]> allRequests) {
+        int[] forwardConnections = topology.forward(proxyId);
+        LoadBalancingMatcher rules = topology.rules(proxyId);
+        if (forwardConnections.length == 1 && rules.size() == 0) {
+            // Single forward connection and no rules: forward everything
+            walk.offer(forwardConnections[0], allRequests);
+        } else if (rules.size() > 0) {
+            // Has rules: the first rule that targets a forward connection and matches the request wins
+            int[] targets = topology.ruleTargets(proxyId);
+            NetworkTopology.StoppedRules stopped = walk.stopped();
+            BitSet stoppedRules = stopped.of(rules);
+            for (byte[] req : allRequests) {
+                int rule = rules.firstMatch(req, targets, stoppedRules,
+                        (r, message) -> stopped.stop(topology.proxy(proxyId), r, message));
+                if (rule >= 0) walk.offer(targets[rule], req);
+                // If no rule matched, don't forward (when rules are enabled)
+            }
+        } else if (forwardConnections.length > 1) {
+            // Multiple connections but no rules: this is likely a configuration error
+            // Forward to first connection only to avoid duplication
+            walk.offer(forwardConnections[0], allRequests);
+        }
+    }
 
     public static List<byte[]> parseRequestsForProxyRaw(HttpParserModel model, byte[] data) {
         return parseRequestsForProxyRaw(model, data, true);
@@ -207,50 +244,65 @@ public class ParserChainRunner {
     
     // Internal method with option to include incomplete requests (for testing) or exclude them (for forwarding)
     private static List<byte[]> parseRequestsForProxyRaw(HttpParserModel model, byte[] data, boolean includeIncomplete) {
-        List<byte[]> results = new ArrayList<>();
-        byte[] remaining = data;
+        return parseStream(model, data, includeIncomplete).requests();
+    }
 
-        while (remaining.length > 0) {
-            List<String> headerLineEndings = model.getHeaderLineEndings();
-            if (headerLineEndings == null || headerLineEndings.isEmpty()) {
+    // One pass over data: the first settled results can no longer change whatever is appended to data, and they
+    // end at settledEnd; closed when one of them made the WAF close the connection. overrun is the error of a parser or
+    // firewall script stopped for running past its budget, or null
+    record ParsedStream(List<byte[]> requests, int settled, int settledEnd, boolean closed, String overrun) {}
+
+    static ParsedStream parseStream(HttpParserModel model, byte[] data, boolean includeIncomplete) {
+        List<byte[]> results = new ArrayList<>();
+        ParserPlan plan = ParserPlan.of(model);
+        // Requests stay offsets into data; only what a stage rewrites gets copied
+        int offset = 0;
+        int settled = 0;
+        int settledEnd = 0;
+        boolean closed = false;
+        String overrun = null;
+        // With batch firewall rules the requests are checked together once the stream is parsed; a request that
+        // gets blocked is tagged in place, and one that closes the connection drops everything after it
+        Deferred deferred = plan.firewallPipeline().batched() ? new Deferred() : null;
+
+        while (offset < data.length) {
+            if (plan.headerLineEndings().isEmpty()) {
                 String tag = "<parsing_error:\"No header line endings were configured\">";
-                results.add(concat(tag.getBytes(StandardCharsets.ISO_8859_1), remaining));
+                results.add(concat(tag.getBytes(StandardCharsets.ISO_8859_1), data, offset));
                 break;
             }
 
-            ParserResult split = ParserUtils.splitHeaders(model, remaining);
-            byte[] headersBytes = split.getParsedPayload();
-            byte[] rest = split.getUnparsedRemaining();
-            String headerErr = split.getError();
+            HeaderSlice headers = ParserUtils.sliceHeaders(plan, data, offset);
+            String headerErr = headers.error();
 
-            if (headersBytes.length == 0 && headerErr != null && headerErr.contains("Header/body delimiter not found")) {
+            if (headers.length() == 0 && headerErr != null && headerErr.contains("Header/body delimiter not found")) {
                 // Headers are incomplete
                 if (includeIncomplete) {
                     // For testing: mark as incomplete
                     String tag = "<incomplete_request:incomplete headers>";
-                    results.add(concat(tag.getBytes(StandardCharsets.ISO_8859_1), remaining));
+                    results.add(concat(tag.getBytes(StandardCharsets.ISO_8859_1), data, offset));
                 }
                 // Stop processing this stream - the next data concatenation should complete it
                 break;
             }
-            if (headersBytes.length == 0 || (headerErr != null && !headerErr.contains("Header/body delimiter not found"))) {
+            if (headers.length() == 0 || (headerErr != null && !headerErr.contains("Header/body delimiter not found"))) {
                 String tag = "<parsing_error:\"" + (headerErr != null ? headerErr : "Header section not found") + "\">";
-                results.add(concat(tag.getBytes(StandardCharsets.ISO_8859_1), remaining));
+                results.add(concat(tag.getBytes(StandardCharsets.ISO_8859_1), data, offset));
                 break;
             }
 
             // 1. Split header lines and fold (before any other step)
-            List<String> headerLines = ParserUtils.splitHeaderLines(model, headersBytes);
+            List<String> headerLines = headers.lines();
             if (model.isAllowHeaderFolding()) {
-                headerLines = foldHeaderLines(headerLines, headerLineEndings);
+                headerLines = foldHeaderLines(headerLines, plan);
             }
 
             // 2. Delete header rules
-            List<String> deleteRules = model.getDeleteHeaderRules();
-            if (deleteRules != null && !deleteRules.isEmpty()) {
+            List<String> deleteRules = plan.deleteHeaderRules();
+            if (!deleteRules.isEmpty()) {
                 headerLines.removeIf(line -> {
                     for (String match : deleteRules) {
-                        if (match != null && !match.isEmpty() && line.contains(match)) {
+                        if (line.contains(match)) {
                             return true;
                         }
                     }
@@ -259,9 +311,9 @@ public class ParserChainRunner {
             }
 
             // 3. Add header rules (insert before the header-end block)
-            List<String> addRules = model.getAddHeaderRules();
-            if (addRules != null && !addRules.isEmpty()) {
-                String addEnding = getBestHeaderLineEnding(headerLineEndings);
+            List<String> addRules = plan.addHeaderRules();
+            if (!addRules.isEmpty()) {
+                String addEnding = plan.bestHeaderLineEnding();
                 int insertAt = headerLines.size();
                 for (int i = headerLines.size() - 1; i >= 0; i--) {
                     if (headerLines.get(i).trim().isEmpty()) {
@@ -271,10 +323,8 @@ public class ParserChainRunner {
                     }
                 }
                 for (String add : addRules) {
-                    if (add != null && !add.isEmpty()) {
-                        headerLines.add(insertAt, add + addEnding);
-                        insertAt++;
-                    }
+                    headerLines.add(insertAt, add + addEnding);
+                    insertAt++;
                 }
             }
 
@@ -284,16 +334,16 @@ public class ParserChainRunner {
                     headerLines = ParserUtils.runHeaderLinesJs(model, headerLines);
                 } catch (Exception ex) {
                     String tag = "<parsing_error:\"" + ex.getMessage() + "\">";
-                    results.add(concat(tag.getBytes(StandardCharsets.ISO_8859_1), remaining));
+                    results.add(concat(tag.getBytes(StandardCharsets.ISO_8859_1), data, offset));
+                    if (ex.getCause() instanceof JSEngine.ScriptBudgetExceeded) overrun = ex.getMessage();
                     break;
                 }
             }
 
             // 5. Request line logic (method rewrite, version, decode)
-            List<String> requestLineDelimiters = model.getRequestLineDelimiters();
-            if (requestLineDelimiters == null || requestLineDelimiters.isEmpty()) {
+            if (plan.requestLineDelimiters().isEmpty()) {
                 String tag = "<parsing_error:\"No request line delimiters were configured\">";
-                results.add(concat(tag.getBytes(StandardCharsets.ISO_8859_1), remaining));
+                results.add(concat(tag.getBytes(StandardCharsets.ISO_8859_1), data, offset));
                 break;
             }
 
@@ -308,12 +358,13 @@ public class ParserChainRunner {
                         requestLine = ParserUtils.runRequestLineJs(model, requestLine);
                     } catch (Exception ex) {
                         String tag = "<parsing_error:\"" + ex.getMessage() + "\">";
-                        results.add(concat(tag.getBytes(StandardCharsets.ISO_8859_1), remaining));
+                        results.add(concat(tag.getBytes(StandardCharsets.ISO_8859_1), data, offset));
+                        if (ex.getCause() instanceof JSEngine.ScriptBudgetExceeded) overrun = ex.getMessage();
                         break;
                     }
                 }
 
-                String[] parts = ParserUtils.splitRequestLineSimultaneous(requestLine, requestLineDelimiters);
+                String[] parts = ParserUtils.splitRequestLineSimultaneous(requestLine, plan);
                 if (parts == null || parts.length != 5) {
                     requestLineError = true;
                     requestLineErrorMsg = "Invalid request line: could not split into exactly 3 parts";
@@ -324,63 +375,34 @@ public class ParserChainRunner {
                     String delimiter1 = parts[3];
                     String delimiter2 = parts[4];
 
-                    if (model.isRewriteMethodEnabled()) {
-                        String from = model.getFromMethod();
-                        String to = model.getToMethod();
-                        if (method != null && from != null && !from.isEmpty()
-                                && to != null && !to.isEmpty()
-                                && method.equals(from)) {
-                            method = to;
-                        }
+                    if (plan.rewriteFromMethod() != null && method.equals(plan.rewriteFromMethod())) {
+                        method = plan.rewriteToMethod();
                     }
 
-                    if (model.isDecodeUrlBeforeForwarding() && uri != null) {
-                        String fromRange = model.getUrlDecodeFrom();
-                        String toRange = model.getUrlDecodeTo();
-                        if (fromRange != null && toRange != null) {
-                            try {
-                                int fromInt = Integer.parseInt(fromRange.replace("%", ""), 16);
-                                int toInt = Integer.parseInt(toRange.replace("%", ""), 16);
-                                StringBuilder decoded = new StringBuilder();
-                                for (int i = 0; i < uri.length(); ) {
-                                    if (uri.charAt(i) == '%' && i + 2 < uri.length()) {
-                                        String hex = uri.substring(i + 1, i + 3);
-                                        int val = Integer.parseInt(hex, 16);
-                                        if (val >= fromInt && val <= toInt) {
-                                            decoded.append((char) val);
-                                            i += 3;
-                                            continue;
-                                        }
+                    if (plan.urlDecodeFrom() >= 0) {
+                        try {
+                            StringBuilder decoded = new StringBuilder();
+                            for (int i = 0; i < uri.length(); ) {
+                                if (uri.charAt(i) == '%' && i + 2 < uri.length()) {
+                                    String hex = uri.substring(i + 1, i + 3);
+                                    int val = Integer.parseInt(hex, 16);
+                                    if (val >= plan.urlDecodeFrom() && val <= plan.urlDecodeTo()) {
+                                        decoded.append((char) val);
+                                        i += 3;
+                                        continue;
                                     }
-                                    decoded.append(uri.charAt(i));
-                                    i++;
                                 }
-                                uri = decoded.toString();
-                            } catch (Exception ignored) {}
-                        }
+                                decoded.append(uri.charAt(i));
+                                i++;
+                            }
+                            uri = decoded.toString();
+                        } catch (Exception ignored) {}
                     }
 
-                    if (model.getForcedHttpVersion() != null) {
-                        switch (model.getForcedHttpVersion()) {
-                            case HTTP_1_0: version = "HTTP/1.0"; break;
-                            case HTTP_1_1: version = "HTTP/1.1"; break;
-                            case AUTO: 
-                                String customVersion = model.getCustomHttpVersion();
-                                if (customVersion != null && !customVersion.isEmpty()) {
-                                    version = customVersion;
-                                }
-                                break;
-                        }
-                    }
-                    String oldEnding = "";
-                    String origLine = headerLines.get(0);
-                    for (String ending : headerLineEndings) {
-                        String endingDecoded = ParserUtils.decodeEscapedSequenceStr(ending);
-                        if (origLine.endsWith(endingDecoded)) {
-                            oldEnding = endingDecoded;
-                            break;
-                        }
+                    if (plan.forcedHttpVersion() != null) {
+                        version = plan.forcedHttpVersion();
                     }
+                    String oldEnding = plan.lineEndingOf(headerLines.get(0));
                     // Use original delimiters instead of hardcoded spaces
                     headerLines.set(0, method + delimiter1 + uri + delimiter2 + version + oldEnding);
                 }
@@ -391,21 +413,23 @@ public class ParserChainRunner {
 
             if (requestLineError) {
                 String tag = "<parsing_error:\"" + requestLineErrorMsg + "\">";
-                results.add(concat(tag.getBytes(StandardCharsets.ISO_8859_1), remaining));
+                results.add(concat(tag.getBytes(StandardCharsets.ISO_8859_1), data, offset));
                 break;
             }
 
             List<String> currentHeaderLines = new ArrayList<>(headerLines);
-            byte[] currentBody = rest;
-            byte[] buffer = rest;
+            HeaderTable headerTable = HeaderTable.of(currentHeaderLines);
 
             // Check if we should preserve original chunked encoding
             boolean preserveChunked = false;
             boolean isChunked = false;
             
             // Check if this is a chunked request
-            for (String line : currentHeaderLines) {
-                if (line.toLowerCase().contains("transfer-encoding") && line.toLowerCase().contains("chunked")) {
+            for (int i = 0; i < headerTable.size(); i++) {
+                int lineStart = headerTable.start(i);
+                int lineEnd = headerTable.end(i);
+                if (headerTable.containsIgnoreCase(lineStart, lineEnd, "transfer-encoding")
+                        && headerTable.containsIgnoreCase(lineStart, lineEnd, "chunked")) {
                     isChunked = true;
                     if (model.getOutputBodyEncoding() == HttpParserModel.MessageLenBodyEncoding.DONT_MODIFY) {
                         preserveChunked = true;
@@ -415,44 +439,36 @@ public class ParserChainRunner {
             }
             
             MessageLengthHeaderResult lenResult;
-            byte[] originalChunkedBody = null;
+            int originalChunkedEnd = -1;
             
             if (preserveChunked) {
                 // For DONT_MODIFY with chunked, we need to preserve the original chunked body
                 // Calculate how much of the original body contains the chunked data
-                lenResult = ParserUtils.getMessageBodyByHeaderRules(model, currentHeaderLines, currentBody);
+                lenResult = ParserUtils.getMessageBodyByHeaderRules(plan, headerTable, data, headers.end());
                 if (lenResult != null && lenResult.getError() == null) {
-                    // Calculate the original chunked body size by finding where remaining starts
-                    int chunkedBodySize = currentBody.length - lenResult.getRemaining().length;
-                    originalChunkedBody = new byte[chunkedBodySize];
-                    System.arraycopy(currentBody, 0, originalChunkedBody, 0, chunkedBodySize);
+                    // The original chunked body runs up to where the remaining starts
+                    originalChunkedEnd = lenResult.getEnd();
                 }
             } else {
-                lenResult = ParserUtils.getMessageBodyByHeaderRules(model, currentHeaderLines, currentBody);
+                lenResult = ParserUtils.getMessageBodyByHeaderRules(plan, headerTable, data, headers.end());
             }
 
             if (lenResult != null && lenResult.getIncompleteBodyBytes() > 0 && lenResult.getChunkedIncompleteTag() == null) {
-                // Calculate how much data belongs to this incomplete request
-                int consumedBytes = headersBytes.length + lenResult.getBody().length;
-                
                 // Check if we can complete this request with the remaining data
                 int missingBytes = lenResult.getIncompleteBodyBytes();
-                byte[] afterBody = lenResult.getRemaining();
+                int afterBody = lenResult.getEnd();
                 
-                if (afterBody.length >= missingBytes) {
+                if (data.length - afterBody >= missingBytes) {
                     // We have enough data to complete the request!
-                    byte[] completedBody = new byte[lenResult.getBody().length + missingBytes];
-                    System.arraycopy(lenResult.getBody(), 0, completedBody, 0, lenResult.getBody().length);
-                    System.arraycopy(afterBody, 0, completedBody, lenResult.getBody().length, missingBytes);
-                    
-                    // Update lenResult with the completed body
                     lenResult = new MessageLengthHeaderResult(
-                        currentHeaderLines,  // headerLines
-                        completedBody,       // body
-                        Arrays.copyOfRange(afterBody, missingBytes, afterBody.length), // remaining
-                        null,               // error
-                        0,                  // incompleteBodyBytes (now complete)
-                        null                // chunkedIncompleteTag
+                        currentHeaderLines,                        // headerLines
+                        data,                                      // source
+                        lenResult.getBodyStart(),                  // body start
+                        lenResult.getBodyEnd() + missingBytes,     // body end
+                        null,                                      // decoded body
+                        afterBody + missingBytes,                  // end
+                        null,                                      // error
+                        0                                          // incompleteBodyBytes (now complete)
                     );
                     // Continue processing with the completed request
                 } else {
@@ -462,18 +478,11 @@ public class ParserChainRunner {
                         String incompleteTag = "<incomplete_request:" + missingBytes + " body bytes missing>";
                         byte[] tagBytes = incompleteTag.getBytes(StandardCharsets.ISO_8859_1);
                         
-                        // Build the header block
-                        StringBuilder headerBlock = new StringBuilder();
-                        for (String line : currentHeaderLines) {
-                            headerBlock.append(line);
-                        }
-                        byte[] headerBytes = headerBlock.toString().getBytes(StandardCharsets.ISO_8859_1);
-                        
                         // Build the incomplete request with tag
                         ByteArrayOutputStream incompleteRequest = new ByteArrayOutputStream();
                         try {
                             incompleteRequest.write(tagBytes);
-                            incompleteRequest.write(headerBytes);
+                            incompleteRequest.write(headerTable.block(), 0, headerTable.length());
                             incompleteRequest.write(lenResult.getBody());
                         } catch (Exception e) {
                             // Shouldn't happen with ByteArrayOutputStream
@@ -482,12 +491,12 @@ public class ParserChainRunner {
                     }
                     
                     // Try to find more complete requests after it
-                    byte[] skipData = lenResult.getRemaining();
+                    int skipFrom = lenResult.getEnd();
                     
-                    if (skipData.length > 0) {
+                    if (skipFrom < data.length) {
                         // Try to find the next valid request start
                         // Look for a valid HTTP method in the remaining data
-                        String remainingStr = new String(skipData, StandardCharsets.ISO_8859_1);
+                        String remainingStr = new String(data, skipFrom, data.length - skipFrom, StandardCharsets.ISO_8859_1);
                         
                         // Common HTTP methods to look for
                         String[] httpMethods = {"GET ", "POST ", "PUT ", "DELETE ", "HEAD ", "OPTIONS ", "PATCH ", "CONNECT ", "TRACE "};
@@ -502,11 +511,11 @@ public class ParserChainRunner {
                         
                         if (nextRequestStart > 0) {
                             // Found a potential next request, skip to it
-                            remaining = Arrays.copyOfRange(skipData, nextRequestStart, skipData.length);
+                            offset = skipFrom + nextRequestStart;
                             continue;
                         } else if (nextRequestStart == 0) {
                             // Next request starts immediately
-                            remaining = skipData;
+                            offset = skipFrom;
                             continue;
                         }
                     }
@@ -518,72 +527,93 @@ public class ParserChainRunner {
             // Don't treat chunked encoding as incomplete if we successfully parsed the body
             if (lenResult != null && lenResult.getChunkedIncompleteTag() != null && lenResult.getBody().length == 0) {
                 // Only mark as incomplete if we couldn't parse any body
-                byte[] partial = Arrays.copyOfRange(remaining, 0, headersBytes.length);
+                byte[] partial = headers.toByteArray();
                 String tag = "<incomplete_request: chunks incomplete>";
                 results.add(concat(partial, tag.getBytes(StandardCharsets.ISO_8859_1)));
                 break;
             }
             if (lenResult.getError() != null) {
                 String tag = "<parsing_error:\"" + lenResult.getError() + "\">";
-                results.add(concat(tag.getBytes(StandardCharsets.ISO_8859_1), remaining));
+                results.add(concat(tag.getBytes(StandardCharsets.ISO_8859_1), data, offset));
                 break;
             }
 
-            List<String> afterJsHeaderLines = currentHeaderLines;
-            byte[] afterJsBody = lenResult.getBody();
+            HeaderTable afterJsHeaders = headerTable;
+            // null while the body is still the bytes of data between bodyStart and bodyEnd
+            byte[] afterJsBody = lenResult.isSourceBody() ? null : lenResult.getBody();
+            int bodyStart = lenResult.getBodyStart();
+            int bodyEnd = lenResult.getBodyEnd();
 
             if (model.isUseMessageLengthJs()) {
                 try {
-                    ParserUtils.HeaderLinesBodyEncodingResult jsResult = ParserUtils.runMessageLengthJs(model, afterJsHeaderLines, afterJsBody, buffer);
-                    afterJsHeaderLines = jsResult.headerLines;
+                    ByteView buffer = new ByteView(data, headers.end(), data.length);
+                    ParserUtils.HeaderLinesBodyEncodingResult jsResult = ParserUtils.runMessageLengthJs(model, afterJsHeaders.lines(), lenResult.getBody(), buffer);
+                    afterJsHeaders = HeaderTable.of(jsResult.headerLines);
                     afterJsBody = jsResult.body;
                 } catch (Exception ex) {
                     String tag = "<parsing_error:\"" + ex.getMessage() + "\">";
-                    results.add(concat(tag.getBytes(StandardCharsets.ISO_8859_1), remaining));
+                    results.add(concat(tag.getBytes(StandardCharsets.ISO_8859_1), data, offset));
+                    if (ex.getCause() instanceof JSEngine.ScriptBudgetExceeded) overrun = ex.getMessage();
                     break;
                 }
             }
 
             // Apply output body encoding transformation
             if (model.getOutputBodyEncoding() != null && model.getOutputBodyEncoding() != HttpParserModel.MessageLenBodyEncoding.DONT_MODIFY) {
-                afterJsHeaderLines = applyOutputBodyEncoding(model, afterJsHeaderLines, afterJsBody, headerLineEndings);
-                afterJsBody = transformBodyEncoding(model, afterJsBody);
-            } else if (preserveChunked && originalChunkedBody != null) {
+                byte[] body = afterJsBody != null ? afterJsBody : lenResult.getBody();
+                afterJsHeaders = HeaderTable.of(applyOutputBodyEncoding(model, afterJsHeaders, body, plan.bestHeaderLineEnding()));
+                afterJsBody = transformBodyEncoding(model, body);
+            } else if (preserveChunked && originalChunkedEnd >= 0) {
                 // Use the original chunked body instead of the decoded body
-                afterJsBody = originalChunkedBody;
+                afterJsBody = null;
+                bodyStart = headers.end();
+                bodyEnd = originalChunkedEnd;
             }
             
             // --- Build header block as-is (no extra endings), preserving all endings and structure
-            StringBuilder headerBlock = new StringBuilder();
-            for (String line : afterJsHeaderLines) {
-                headerBlock.append(line);
-            }
-            byte[] headerBytes = headerBlock.toString().getBytes(StandardCharsets.ISO_8859_1);
-            byte[] bodyBytes = afterJsBody;
-            byte[] rawRequest = new byte[headerBytes.length + bodyBytes.length];
-            System.arraycopy(headerBytes, 0, rawRequest, 0, headerBytes.length);
-            System.arraycopy(bodyBytes, 0, rawRequest, headerBytes.length, bodyBytes.length);
+            BuiltRequest built = buildRequest(data, headers, afterJsHeaders, afterJsBody, bodyStart, bodyEnd);
+            byte[] rawRequest = built.bytes();
 
-            byte[] afterBody = lenResult.getRemaining();
+            int afterBody = lenResult.getEnd();
+            // Settled once its headers and body are both complete and no delimiter starting at or before the one found
+            // could still be completed by appended bytes; the message length script sees the rest of the buffer, so
+            // what it touches settles only once bytes follow the request
+            boolean settles = headerErr == null && lenResult.isSettled()
+                    && (!model.isUseMessageLengthJs() || afterBody < data.length)
+                    && data.length >= headers.delimiterStart() + plan.longestHeaderDelimiter();
 
             // Check firewall rules before adding the request
-            FirewallCheckResult firewallResult = checkFirewallRules(model, rawRequest, afterJsHeaderLines, afterJsBody);
+            FirewallPipeline.Result firewallResult;
+            try {
+                firewallResult = deferred != null
+                        ? FirewallPipeline.PASSED
+                        : plan.firewallPipeline().check(rawRequest, built.headerLength(), afterJsHeaders);
+            } catch (JSEngine.ScriptBudgetExceeded ex) {
+                String tag = "<parsing_error:\"Firewall JS Error: " + ex.getMessage() + "\">";
+                results.add(concat(tag.getBytes(StandardCharsets.ISO_8859_1), data, offset));
+                overrun = "Firewall JS Error: " + ex.getMessage();
+                break;
+            }
+            if (deferred != null) {
+                // whichever way it's added below, it's the next result
+                deferred.add(results.size(), offset, rawRequest, built.headerLength(), afterJsHeaders);
+            }
             if (firewallResult.blocked) {
                 // Add the blocked request with WAF tags
-                String wafTag = "<WAF_RULE: the request was not forwarded as it hit a rule for \"" + 
-                               firewallResult.triggeredSource + "\">";
-                if (firewallResult.closeConnection) {
-                    wafTag += "<CONNECTION_CLOSED_BY_WAF>";
+                results.add(concat(rawRequest, wafTag(firewallResult)));
+                if (settles && settled == results.size() - 1) {
+                    settled++;
+                    settledEnd = afterBody;
+                    closed = firewallResult.closeConnection;
                 }
-                results.add(concat(rawRequest, wafTag.getBytes(StandardCharsets.ISO_8859_1)));
                 
                 // If connection should be closed, stop processing further requests
                 if (firewallResult.closeConnection) {
                     break;
                 }
                 // Continue processing next request if connection not closed
-                remaining = afterBody;
-                if (remaining.length > 0) {
+                offset = afterBody;
+                if (offset < data.length) {
                     continue;
                 } else {
                     break;
@@ -591,18 +621,24 @@ public class ParserChainRunner {
             }
 
             boolean incomplete = false;
-            if (headersBytes.length == 0 || headerErr != null) {
+            if (headers.length() == 0 || headerErr != null) {
                 incomplete = true;
             }
 
-            if (!incomplete && afterBody.length == 0) {
+            if (!incomplete && settles && settled == results.size()) {
+                settled++;
+                settledEnd = afterBody;
+                if (deferred != null) deferred.settledEnds.add(afterBody);
+            }
+
+            if (!incomplete && afterBody == data.length) {
                 results.add(rawRequest);
                 break;
             }
 
-            if (afterBody.length > 0) {
+            if (afterBody < data.length) {
                 results.add(rawRequest);
-                remaining = afterBody;
+                offset = afterBody;
                 continue;
             }
 
@@ -614,35 +650,94 @@ public class ParserChainRunner {
             results.add(rawRequest);
             break;
         }
-        return results;
+
+        if (deferred != null && !deferred.indexes.isEmpty()) {
+            FirewallPipeline.Result[] checked;
+            try {
+                checked = plan.firewallPipeline().checkAll(deferred.requests, deferred.headerLengths, deferred.headers);
+            } catch (JSEngine.ScriptBudgetExceeded ex) {
+                // no telling which request the rule got stuck on: the stream errors from the first one checked
+                int index = deferred.indexes.get(0);
+                results.subList(index, results.size()).clear();
+                String tag = "<parsing_error:\"Firewall JS Error: " + ex.getMessage() + "\">";
+                results.add(concat(tag.getBytes(StandardCharsets.ISO_8859_1), data, deferred.offsets.get(0)));
+                if (settled > index) {
+                    settled = index;
+                    settledEnd = index > 0 ? deferred.settledEnds.get(index - 1) : 0;
+                }
+                return new ParsedStream(results, settled, settledEnd, false, "Firewall JS Error: " + ex.getMessage());
+            }
+            for (int d = 0; d < checked.length; d++) {
+                if (!checked[d].blocked) continue;
+                int index = deferred.indexes.get(d);
+                results.set(index, concat(deferred.requests.get(d), wafTag(checked[d])));
+                if (checked[d].closeConnection) {
+                    results.subList(index + 1, results.size()).clear();
+                    if (settled > index) {
+                        settled = index + 1;
+                        settledEnd = deferred.settledEnds.get(index);
+                        closed = true;
+                    }
+                    break;
+                }
+            }
+        }
+        return new ParsedStream(results, settled, settledEnd, closed, overrun);
+    }
+
+    // The requests of one stream waiting on the firewall, with the result each was added as
+    private static final class Deferred {
+        final List<Integer> indexes = new ArrayList<>();
+        final List<Integer> offsets = new ArrayList<>();
+        final List<byte[]> requests = new ArrayList<>();
+        final List<Integer> headerLengths = new ArrayList<>();
+        final List<HeaderTable> headers = new ArrayList<>();
+        // per settled result, where it ends in the stream
+        final List<Integer> settledEnds = new ArrayList<>();
+
+        void add(int index, int offset, byte[] request, int headerLength, HeaderTable headerTable) {
+            indexes.add(index);
+            offsets.add(offset);
+            requests.add(request);
+            headerLengths.add(headerLength);
+            headers.add(headerTable);
+        }
+    }
+
+    private static byte[] wafTag(FirewallPipeline.Result firewallResult) {
+        String wafTag = "<WAF_RULE: the request was not forwarded as it hit a rule for \"" +
+                firewallResult.triggeredSource + "\">";
+        if (firewallResult.closeConnection) {
+            wafTag += "<CONNECTION_CLOSED_BY_WAF>";
+        }
+        return wafTag.getBytes(StandardCharsets.ISO_8859_1);
     }
 
     public static List<byte[]> parseValidRequestsForProxyRaw(HttpParserModel model, byte[] data) {
         List<byte[]> valid = new ArrayList<>();
-        byte[] remaining = data;
+        ParserPlan plan = ParserPlan.of(model);
+        // Requests stay offsets into data; only what a stage rewrites gets copied
+        int offset = 0;
 
-        while (remaining.length > 0) {
-            List<String> headerLineEndings = model.getHeaderLineEndings();
-            if (headerLineEndings == null || headerLineEndings.isEmpty()) break;
+        while (offset < data.length) {
+            if (plan.headerLineEndings().isEmpty()) break;
 
-            ParserResult split = ParserUtils.splitHeaders(model, remaining);
-            byte[] headersBytes = split.getParsedPayload();
-            byte[] rest = split.getUnparsedRemaining();
-            String headerErr = split.getError();
+            HeaderSlice headers = ParserUtils.sliceHeaders(plan, data, offset);
+            String headerErr = headers.error();
 
-            if (headersBytes.length == 0) break;
+            if (headers.length() == 0) break;
             if (headerErr != null) break;
 
-            List<String> headerLines = ParserUtils.splitHeaderLines(model, headersBytes);
+            List<String> headerLines = headers.lines();
             if (model.isAllowHeaderFolding()) {
-                headerLines = foldHeaderLines(headerLines, headerLineEndings);
+                headerLines = foldHeaderLines(headerLines, plan);
             }
 
-            List<String> deleteRules = model.getDeleteHeaderRules();
-            if (deleteRules != null && !deleteRules.isEmpty()) {
+            List<String> deleteRules = plan.deleteHeaderRules();
+            if (!deleteRules.isEmpty()) {
                 headerLines.removeIf(line -> {
                     for (String match : deleteRules) {
-                        if (match != null && !match.isEmpty() && line.contains(match)) {
+                        if (line.contains(match)) {
                             return true;
                         }
                     }
@@ -650,9 +745,9 @@ public class ParserChainRunner {
                 });
             }
 
-            List<String> addRules = model.getAddHeaderRules();
-            if (addRules != null && !addRules.isEmpty()) {
-                String addEnding = getBestHeaderLineEnding(headerLineEndings);
+            List<String> addRules = plan.addHeaderRules();
+            if (!addRules.isEmpty()) {
+                String addEnding = plan.bestHeaderLineEnding();
                 int insertAt = headerLines.size();
                 for (int i = headerLines.size() - 1; i >= 0; i--) {
                     if (headerLines.get(i).trim().isEmpty()) {
@@ -662,15 +757,12 @@ public class ParserChainRunner {
                     }
                 }
                 for (String add : addRules) {
-                    if (add != null && !add.isEmpty()) {
-                        headerLines.add(insertAt, add + addEnding);
-                        insertAt++;
-                    }
+                    headerLines.add(insertAt, add + addEnding);
+                    insertAt++;
                 }
             }
 
-            List<String> requestLineDelimiters = model.getRequestLineDelimiters();
-            if (requestLineDelimiters == null || requestLineDelimiters.isEmpty()) break;
+            if (plan.requestLineDelimiters().isEmpty()) break;
 
             if (model.isUseHeaderLinesJs()) {
                 try {
@@ -691,7 +783,7 @@ public class ParserChainRunner {
                         break;
                     }
                 }
-                String[] parts = ParserUtils.splitRequestLineSimultaneous(requestLine, requestLineDelimiters);
+                String[] parts = ParserUtils.splitRequestLineSimultaneous(requestLine, plan);
                 if (parts == null || parts.length != 5) {
                     requestLineError = true;
                 } else {
@@ -701,61 +793,34 @@ public class ParserChainRunner {
                     String delimiter1 = parts[3];
                     String delimiter2 = parts[4];
 
-                    if (model.isRewriteMethodEnabled()) {
-                        String from = model.getFromMethod();
-                        String to = model.getToMethod();
-                        if (method != null && from != null && !from.isEmpty()
-                                && to != null && !to.isEmpty()
-                                && method.equals(from)) {
-                            method = to;
-                        }
+                    if (plan.rewriteFromMethod() != null && method.equals(plan.rewriteFromMethod())) {
+                        method = plan.rewriteToMethod();
                     }
-                    if (model.isDecodeUrlBeforeForwarding() && uri != null) {
-                        String fromRange = model.getUrlDecodeFrom();
-                        String toRange = model.getUrlDecodeTo();
-                        if (fromRange != null && toRange != null) {
-                            try {
-                                int fromInt = Integer.parseInt(fromRange.replace("%", ""), 16);
-                                int toInt = Integer.parseInt(toRange.replace("%", ""), 16);
-                                StringBuilder decoded = new StringBuilder();
-                                for (int i = 0; i < uri.length(); ) {
-                                    if (uri.charAt(i) == '%' && i + 2 < uri.length()) {
-                                        String hex = uri.substring(i + 1, i + 3);
-                                        int val = Integer.parseInt(hex, 16);
-                                        if (val >= fromInt && val <= toInt) {
-                                            decoded.append((char) val);
-                                            i += 3;
-                                            continue;
-                                        }
+
+                    if (plan.urlDecodeFrom() >= 0) {
+                        try {
+                            StringBuilder decoded = new StringBuilder();
+                            for (int i = 0; i < uri.length(); ) {
+                                if (uri.charAt(i) == '%' && i + 2 < uri.length()) {
+                                    String hex = uri.substring(i + 1, i + 3);
+                                    int val = Integer.parseInt(hex, 16);
+                                    if (val >= plan.urlDecodeFrom() && val <= plan.urlDecodeTo()) {
+                                        decoded.append((char) val);
+                                        i += 3;
+                                        continue;
                                     }
-                                    decoded.append(uri.charAt(i));
-                                    i++;
-                                }
-                                uri = decoded.toString();
-                            } catch (Exception ignored) {}
-                        }
-                    }
-                    if (model.getForcedHttpVersion() != null) {
-                        switch (model.getForcedHttpVersion()) {
-                            case HTTP_1_0: version = "HTTP/1.0"; break;
-                            case HTTP_1_1: version = "HTTP/1.1"; break;
-                            case AUTO: 
-                                String customVersion = model.getCustomHttpVersion();
-                                if (customVersion != null && !customVersion.isEmpty()) {
-                                    version = customVersion;
                                 }
-                                break;
-                        }
+                                decoded.append(uri.charAt(i));
+                                i++;
+                            }
+                            uri = decoded.toString();
+                        } catch (Exception ignored) {}
                     }
-                    String oldEnding = "";
-                    String origLine = headerLines.get(0);
-                    for (String ending : headerLineEndings) {
-                        String endingDecoded = ParserUtils.decodeEscapedSequenceStr(ending);
-                        if (origLine.endsWith(endingDecoded)) {
-                            oldEnding = endingDecoded;
-                            break;
-                        }
+
+                    if (plan.forcedHttpVersion() != null) {
+                        version = plan.forcedHttpVersion();
                     }
+                    String oldEnding = plan.lineEndingOf(headerLines.get(0));
                     headerLines.set(0, method + delimiter1 + uri + delimiter2 + version + oldEnding);
                 }
             } else {
@@ -764,16 +829,18 @@ public class ParserChainRunner {
             if (requestLineError) break;
 
             List<String> currentHeaderLines = new ArrayList<>(headerLines);
-            byte[] currentBody = rest;
-            byte[] buffer = rest;
+            HeaderTable headerTable = HeaderTable.of(currentHeaderLines);
 
             // Check if we should preserve original chunked encoding
             boolean preserveChunked = false;
             boolean isChunked = false;
             
             // Check if this is a chunked request
-            for (String line : currentHeaderLines) {
-                if (line.toLowerCase().contains("transfer-encoding") && line.toLowerCase().contains("chunked")) {
+            for (int i = 0; i < headerTable.size(); i++) {
+                int lineStart = headerTable.start(i);
+                int lineEnd = headerTable.end(i);
+                if (headerTable.containsIgnoreCase(lineStart, lineEnd, "transfer-encoding")
+                        && headerTable.containsIgnoreCase(lineStart, lineEnd, "chunked")) {
                     isChunked = true;
                     if (model.getOutputBodyEncoding() == HttpParserModel.MessageLenBodyEncoding.DONT_MODIFY) {
                         preserveChunked = true;
@@ -783,19 +850,17 @@ public class ParserChainRunner {
             }
             
             MessageLengthHeaderResult lenResult;
-            byte[] originalChunkedBody = null;
+            int originalChunkedEnd = -1;
             
             if (preserveChunked) {
                 // For DONT_MODIFY with chunked, we need to preserve the original chunked body
-                lenResult = ParserUtils.getMessageBodyByHeaderRules(model, currentHeaderLines, currentBody);
+                lenResult = ParserUtils.getMessageBodyByHeaderRules(plan, headerTable, data, headers.end());
                 if (lenResult != null && lenResult.getError() == null) {
-                    // Calculate the original chunked body size
-                    int chunkedBodySize = currentBody.length - lenResult.getRemaining().length;
-                    originalChunkedBody = new byte[chunkedBodySize];
-                    System.arraycopy(currentBody, 0, originalChunkedBody, 0, chunkedBodySize);
+                    // The original chunked body runs up to where the remaining starts
+                    originalChunkedEnd = lenResult.getEnd();
                 }
             } else {
-                lenResult = ParserUtils.getMessageBodyByHeaderRules(model, currentHeaderLines, currentBody);
+                lenResult = ParserUtils.getMessageBodyByHeaderRules(plan, headerTable, data, headers.end());
             }
 
             if (lenResult != null && (lenResult.getIncompleteBodyBytes() > 0 && lenResult.getChunkedIncompleteTag() == null)) break;
@@ -803,13 +868,17 @@ public class ParserChainRunner {
             if (lenResult != null && lenResult.getChunkedIncompleteTag() != null && lenResult.getBody().length == 0) break;
             if (lenResult.getError() != null) break;
 
-            List<String> afterJsHeaderLines = currentHeaderLines;
-            byte[] afterJsBody = lenResult.getBody();
+            HeaderTable afterJsHeaders = headerTable;
+            // null while the body is still the bytes of data between bodyStart and bodyEnd
+            byte[] afterJsBody = lenResult.isSourceBody() ? null : lenResult.getBody();
+            int bodyStart = lenResult.getBodyStart();
+            int bodyEnd = lenResult.getBodyEnd();
 
             if (model.isUseMessageLengthJs()) {
                 try {
-                    ParserUtils.HeaderLinesBodyEncodingResult jsResult = ParserUtils.runMessageLengthJs(model, afterJsHeaderLines, afterJsBody, buffer);
-                    afterJsHeaderLines = jsResult.headerLines;
+                    ByteView buffer = new ByteView(data, headers.end(), data.length);
+                    ParserUtils.HeaderLinesBodyEncodingResult jsResult = ParserUtils.runMessageLengthJs(model, afterJsHeaders.lines(), lenResult.getBody(), buffer);
+                    afterJsHeaders = HeaderTable.of(jsResult.headerLines);
                     afterJsBody = jsResult.body;
                 } catch (Exception ex) {
                     break;
@@ -818,27 +887,28 @@ public class ParserChainRunner {
             
             // Apply output body encoding transformation or preserve chunked
             if (model.getOutputBodyEncoding() != null && model.getOutputBodyEncoding() != HttpParserModel.MessageLenBodyEncoding.DONT_MODIFY) {
-                afterJsHeaderLines = applyOutputBodyEncoding(model, afterJsHeaderLines, afterJsBody, headerLineEndings);
-                afterJsBody = transformBodyEncoding(model, afterJsBody);
-            } else if (preserveChunked && originalChunkedBody != null) {
+                byte[] body = afterJsBody != null ? afterJsBody : lenResult.getBody();
+                afterJsHeaders = HeaderTable.of(applyOutputBodyEncoding(model, afterJsHeaders, body, plan.bestHeaderLineEnding()));
+                afterJsBody = transformBodyEncoding(model, body);
+            } else if (preserveChunked && originalChunkedEnd >= 0) {
                 // Use the original chunked body instead of the decoded body
-                afterJsBody = originalChunkedBody;
+                afterJsBody = null;
+                bodyStart = headers.end();
+                bodyEnd = originalChunkedEnd;
             }
 
-            StringBuilder headerBlock = new StringBuilder();
-            for (String line : afterJsHeaderLines) {
-                headerBlock.append(line);
-            }
-            byte[] headerBytes = headerBlock.toString().getBytes(StandardCharsets.ISO_8859_1);
-            byte[] bodyBytes = afterJsBody;
-            byte[] rawRequest = new byte[headerBytes.length + bodyBytes.length];
-            System.arraycopy(headerBytes, 0, rawRequest, 0, headerBytes.length);
-            System.arraycopy(bodyBytes, 0, rawRequest, headerBytes.length, bodyBytes.length);
+            BuiltRequest built = buildRequest(data, headers, afterJsHeaders, afterJsBody, bodyStart, bodyEnd);
+            byte[] rawRequest = built.bytes();
 
-            byte[] afterBody = lenResult.getRemaining();
+            int afterBody = lenResult.getEnd();
 
             // Check firewall rules before adding the request
-            FirewallCheckResult firewallResult = checkFirewallRules(model, rawRequest, afterJsHeaderLines, afterJsBody);
+            FirewallPipeline.Result firewallResult;
+            try {
+                firewallResult = plan.firewallPipeline().check(rawRequest, built.headerLength(), afterJsHeaders);
+            } catch (JSEngine.ScriptBudgetExceeded ex) {
+                break;
+            }
             if (firewallResult.blocked) {
                 // Don't add blocked requests to valid list
                 if (firewallResult.closeConnection) {
@@ -846,8 +916,8 @@ public class ParserChainRunner {
                     break;
                 }
                 // Continue with next request
-                remaining = afterBody;
-                if (remaining.length > 0) {
+                offset = afterBody;
+                if (offset < data.length) {
                     continue;
                 } else {
                     break;
@@ -855,18 +925,18 @@ public class ParserChainRunner {
             }
 
             boolean incomplete = false;
-            if (headersBytes.length == 0 || headerErr != null) {
+            if (headers.length() == 0 || headerErr != null) {
                 incomplete = true;
             }
 
-            if (!incomplete && afterBody.length == 0) {
+            if (!incomplete && afterBody == data.length) {
                 valid.add(rawRequest);
                 break;
             }
 
-            if (afterBody.length > 0) {
+            if (afterBody < data.length) {
                 valid.add(rawRequest);
-                remaining = afterBody;
+                offset = afterBody;
                 continue;
             }
 
@@ -879,21 +949,14 @@ public class ParserChainRunner {
     }
 
     // RFC folding: line starting with whitespace is appended to previous header line
-    private static List<String> foldHeaderLines(List<String> headerLines, List<String> headerLineEndings) {
+    private static List<String> foldHeaderLines(List<String> headerLines, ParserPlan plan) {
         List<String> folded = new ArrayList<>();
         for (String line : headerLines) {
             if ((line.length() > 0) && (line.charAt(0) == ' ' || line.charAt(0) == '\t')) {
                 // Fold: append to previous, remove one whitespace char at start
                 if (!folded.isEmpty()) {
                     String prev = folded.remove(folded.size() - 1);
-                    String prevNoEnding = prev;
-                    for (String ending : headerLineEndings) {
-                        String dec = ParserUtils.decodeEscapedSequenceStr(ending);
-                        if (prev.endsWith(dec)) {
-                            prevNoEnding = prev.substring(0, prev.length() - dec.length());
-                            break;
-                        }
-                    }
+                    String prevNoEnding = prev.substring(0, prev.length() - plan.lineEndingOf(prev).length());
                     String continuation = line.substring(1);
 
                     folded.add(prevNoEnding + " " + continuation);
@@ -908,19 +971,6 @@ public class ParserChainRunner {
     }
 
 
-    // Use best header ending: CRLF if present, else LF if present, else first in list.
-    private static String getBestHeaderLineEnding(List<String> endings) {
-        if (endings == null || endings.isEmpty()) return "\r\n";
-        for (String e : endings) {
-            String ending = ParserUtils.decodeEscapedSequenceStr(e);
-            if ("\r\n".equals(ending)) return ending;
-        }
-        for (String e : endings) {
-            String ending = ParserUtils.decodeEscapedSequenceStr(e);
-            if ("\n".equals(ending)) return ending;
-        }
-        return ParserUtils.decodeEscapedSequenceStr(endings.get(0));
-    }
 
     private static byte[] concat(byte[] a, byte[] b) {
         byte[] result = new byte[a.length + b.length];
@@ -928,23 +978,51 @@ public class ParserChainRunner {
         System.arraycopy(b, 0, result, a.length, b.length);
         return result;
     }
+
+    // a followed by everything in data from offset on
+    private static byte[] concat(byte[] a, byte[] data, int offset) {
+        byte[] result = new byte[a.length + data.length - offset];
+        System.arraycopy(a, 0, result, 0, a.length);
+        System.arraycopy(data, offset, result, a.length, data.length - offset);
+        return result;
+    }
+
+    private record BuiltRequest(byte[] bytes, int headerLength) {}
+
+    // The forwarded request: a single copy out of data when the header lines and body are still its own bytes,
+    // otherwise the rewritten header lines followed by the body
+    private static BuiltRequest buildRequest(byte[] data, HeaderSlice headers, HeaderTable headerLines,
+                                             byte[] body, int bodyStart, int bodyEnd) {
+        if (body == null && bodyStart == headers.end() && headers.matches(headerLines)) {
+            return new BuiltRequest(Arrays.copyOfRange(data, headers.start(), bodyEnd), headers.length());
+        }
+        int headerLength = headerLines.length();
+        int bodyLength = body != null ? body.length : bodyEnd - bodyStart;
+        byte[] rawRequest = new byte[headerLength + bodyLength];
+        System.arraycopy(headerLines.block(), 0, rawRequest, 0, headerLength);
+        if (body != null) {
+            System.arraycopy(body, 0, rawRequest, headerLength, bodyLength);
+        } else {
+            System.arraycopy(data, bodyStart, rawRequest, headerLength, bodyLength);
+        }
+        return new BuiltRequest(rawRequest, headerLength);
+    }
     
-    private static List<String> applyOutputBodyEncoding(HttpParserModel model, List<String> headerLines, 
-                                                        byte[] body, List<String> headerLineEndings) {
+    private static List<String> applyOutputBodyEncoding(HttpParserModel model, HeaderTable headerLines,
+                                                        byte[] body, String lineEnding) {
         List<String> modifiedHeaders = new ArrayList<>();
-        String lineEnding = getBestHeaderLineEnding(headerLineEndings);
         boolean hasTransferEncoding = false;
         boolean hasContentLength = false;
         
         // Copy headers, removing conflicting headers based on output encoding
-        for (String line : headerLines) {
-            String lowerLine = line.toLowerCase();
-            if (lowerLine.startsWith("transfer-encoding:")) {
+        for (int i = 0; i < headerLines.size(); i++) {
+            String line = headerLines.lines().get(i);
+            if (headerLines.nameIs(i, "transfer-encoding")) {
                 hasTransferEncoding = true;
                 if (model.getOutputBodyEncoding() == HttpParserModel.MessageLenBodyEncoding.FORCE_CL_HEADER) {
                     continue; // Skip Transfer-Encoding when forcing Content-Length
                 }
-            } else if (lowerLine.startsWith("content-length:")) {
+            } else if (headerLines.nameIs(i, "content-length")) {
                 hasContentLength = true;
                 if (model.getOutputBodyEncoding() == HttpParserModel.MessageLenBodyEncoding.FORCE_CHUNKED) {
                     continue; // Skip Content-Length when forcing chunked
@@ -1005,291 +1083,4 @@ public class ParserChainRunner {
         // (body is already decoded from chunked if it was chunked)
         return body;
     }
-    
-    private static class FirewallCheckResult {
-        boolean blocked = false;
-        boolean closeConnection = false;
-        String triggeredSource = "";
-    }
-    
-    private static FirewallCheckResult checkFirewallRules(HttpParserModel model, byte[] rawRequest, 
-                                                         List<String> headerLines, byte[] body) {
-        FirewallCheckResult result = new FirewallCheckResult();
-        
-        List<FirewallRule> rules = model.getFirewallRules();
-        if (rules == null || rules.isEmpty()) {
-            return result;
-        }
-        
-        String requestStr = new String(rawRequest, StandardCharsets.ISO_8859_1);
-        
-        for (FirewallRule rule : rules) {
-            if (!rule.isEnabled()) continue;
-            
-            String inputValue = null;
-            switch (rule.getSource()) {
-                case METHOD:
-                    if (!headerLines.isEmpty()) {
-                        String requestLine = headerLines.get(0);
-                        String[] parts = requestLine.split(" ");
-                        if (parts.length > 0) {
-                            inputValue = parts[0];
-                        }
-                    }
-                    break;
-                    
-                case URL:
-                    if (!headerLines.isEmpty()) {
-                        String requestLine = headerLines.get(0);
-                        String[] parts = requestLine.split(" ");
-                        if (parts.length > 1) {
-                            inputValue = parts[1];
-                        }
-                    }
-                    break;
-                    
-                case VERSION:
-                    if (!headerLines.isEmpty()) {
-                        String requestLine = headerLines.get(0);
-                        String[] parts = requestLine.split(" ");
-                        if (parts.length > 2) {
-                            // Get the version part (last part before line ending)
-                            String lastPart = parts[parts.length - 1];
-                            // Remove any line endings
-                            inputValue = lastPart.replaceAll("\\r|\\n", "");
-                        }
-                    }
-                    break;
-                    
-                case HEADERS:
-                    // Pass headers as array (excluding request line)
-                    if (headerLines.size() > 1) {
-                        List<String> headers = new ArrayList<>(headerLines.subList(1, headerLines.size()));
-                        // Clean up line endings from headers
-                        for (int i = 0; i < headers.size(); i++) {
-                            headers.set(i, headers.get(i).replaceAll("\\r|\\n", ""));
-                        }
-                        // Evaluate with headers array
-                        boolean blocked = evaluateFirewallRuleArray(rule.getJsCode(), headers);
-                        if (blocked) {
-                            result.blocked = true;
-                            result.closeConnection = rule.isCloseConnection();
-                            result.triggeredSource = rule.getSource().getDisplayName();
-                            return result;
-                        }
-                        continue; // Skip the string evaluation below
-                    }
-                    break;
-                    
-                case BODY:
-                    inputValue = new String(body, StandardCharsets.ISO_8859_1);
-                    break;
-                    
-                case FULL_REQUEST:
-                    inputValue = requestStr;
-                    break;
-            }
-            
-            if (inputValue != null && evaluateFirewallRule(rule.getJsCode(), inputValue)) {
-                result.blocked = true;
-                result.closeConnection = rule.isCloseConnection();
-                result.triggeredSource = rule.getSource().getDisplayName();
-                return result;
-            }
-        }
-        
-        return result;
-    }
-    
-    private static boolean evaluateFirewallRule(String jsCode, String input) {
-        return JSEngine.runFirewallRule(jsCode, input);
-    }
-    
-    private static boolean evaluateFirewallRuleArray(String jsCode, List<String> headers) {
-        String[] headersArray = headers.toArray(new String[0]);
-        return JSEngine.runFirewallRuleArray(jsCode, headersArray);
-    }
-
-    private static boolean matchesForwardingRule(List<LoadBalancingRule> rules, byte[] request, String targetProxyId) {
-        if (rules == null || rules.isEmpty()) return false;
-        for (LoadBalancingRule rule : rules) {
-            if (!rule.isEnabled()) continue;
-            if (rule.getForwardToProxyId() == null) continue;
-            if (!rule.getForwardToProxyId().equals(targetProxyId)) continue;
-            if (ruleMatchesRequest(rule, request)) return true;
-        }
-        return false;
-    }
-
-
-    private static boolean ruleMatchesRequest(httpraider.model.network.LoadBalancingRule rule, byte[] request) {
-        String requestStr = new String(request, java.nio.charset.StandardCharsets.ISO_8859_1);
-        String[] headerBody = requestStr.split("\r\n\r\n", 2);
-        String headersBlock = headerBody.length > 0 ? headerBody[0] : "";
-        String body = headerBody.length > 1 ? headerBody[1] : "";
-
-        switch (rule.getRuleType()) {
-            case URL:
-                String url = extractUrlFromRequestLine(headersBlock);
-                if (url == null) return false;
-                String urlPattern = rule.getPattern();
-                if (urlPattern == null) return false;
-                MatchMode matchOpt = rule.getMatchOption();
-                if (matchOpt == null) matchOpt = MatchMode.EXACT;
-                switch (matchOpt) {
-                    case PREFIX: return url.startsWith(urlPattern);
-                    case SUFFIX: return url.endsWith(urlPattern);
-                    case EXACT:  return url.equals(urlPattern);
-                    case ANY_MATCH: return url.contains(urlPattern);
-                    default:     return false;
-                }
-            case HEADERS:
-                String headerPattern = rule.getPattern();
-                HeaderField field = rule.getHeaderField();
-                if (field == HeaderField.NAME_VALUE) {
-                    String namePattern = rule.getHeaderNamePattern();
-                    String valuePattern = rule.getHeaderValuePattern();
-                    MatchMode nameMode = rule.getHeaderNameMatchMode();
-                    MatchMode valueMode = rule.getHeaderValueMatchMode();
-                    for (String line : headersBlock.split("\r\n")) {
-                        int idx = line.indexOf(':');
-                        if (idx > 0) {
-                            String name = line.substring(0, idx).trim();
-                            String value = line.substring(idx + 1).trim();
-                            boolean nameMatch = false, valueMatch = false;
-                            if (namePattern != null && nameMode != null) {
-                                switch (nameMode) {
-                                    case PREFIX:    nameMatch = name.startsWith(namePattern); break;
-                                    case SUFFIX:    nameMatch = name.endsWith(namePattern); break;
-                                    case EXACT:     nameMatch = name.equals(namePattern); break;
-                                    case ANY_MATCH: nameMatch = name.contains(namePattern); break;
-                                }
-                            }
-                            if (valuePattern != null && valueMode != null) {
-                                switch (valueMode) {
-                                    case PREFIX:    valueMatch = value.startsWith(valuePattern); break;
-                                    case SUFFIX:    valueMatch = value.endsWith(valuePattern); break;
-                                    case EXACT:     valueMatch = value.equals(valuePattern); break;
-                                    case ANY_MATCH: valueMatch = value.contains(valuePattern); break;
-                                }
-                            }
-                            if (nameMatch && valueMatch) return true;
-                        }
-                    }
-                    return false;
-                } else {
-                    MatchMode mode = rule.getMatchMode();
-                    for (String line : headersBlock.split("\r\n")) {
-                        int idx = line.indexOf(':');
-                        String testStr = null;
-                        if (field == HeaderField.NAME && idx > 0) testStr = line.substring(0, idx).trim();
-                        else if (field == HeaderField.VALUE && idx > 0) testStr = line.substring(idx + 1).trim();
-                        else if (field == HeaderField.HEADER_LINE) testStr = line;
-                        if (testStr != null) {
-                            switch (mode) {
-                                case PREFIX:    if (testStr.startsWith(headerPattern)) return true; break;
-                                case SUFFIX:    if (testStr.endsWith(headerPattern))   return true; break;
-                                case EXACT:     if (testStr.equals(headerPattern))      return true; break;
-                                case ANY_MATCH: if (testStr.contains(headerPattern))    return true; break;
-                            }
-                        }
-                    }
-                    return false;
-                }
-            case HOST:
-                for (String line : headersBlock.split("\r\n")) {
-                    if (line.toLowerCase().startsWith("host:")) {
-                        String hostValue = line.substring(5).trim();
-                        String pattern = rule.getHostPattern();
-                        MatchMode m = rule.getHostMatchMode();
-                        if (pattern == null || m == null) continue;
-                        switch (m) {
-                            case PREFIX:    if (hostValue.startsWith(pattern)) return true; break;
-                            case SUFFIX:    if (hostValue.endsWith(pattern))   return true; break;
-                            case EXACT:     if (hostValue.equals(pattern))      return true; break;
-                            case ANY_MATCH: if (hostValue.contains(pattern))    return true; break;
-                        }
-                    }
-                }
-                return false;
-            case COOKIES:
-                for (String line : headersBlock.split("\r\n")) {
-                    if (line.toLowerCase().startsWith("cookie:")) {
-                        String cookieStr = line.substring(7).trim();
-                        String[] cookies = cookieStr.split(";");
-                        for (String cookie : cookies) {
-                            String[] kv = cookie.trim().split("=", 2);
-                            String cname = kv.length > 0 ? kv[0].trim() : "";
-                            String cval = kv.length > 1 ? kv[1].trim() : "";
-                            boolean nameMatch = false, valueMatch = false;
-                            String namePattern = rule.getCookieNamePattern();
-                            String valuePattern = rule.getCookieValuePattern();
-                            MatchMode nameMode = rule.getCookieNameMatchMode();
-                            MatchMode valueMode = rule.getCookieValueMatchMode();
-                            if (namePattern != null && nameMode != null) {
-                                switch (nameMode) {
-                                    case PREFIX:    nameMatch = cname.startsWith(namePattern); break;
-                                    case SUFFIX:    nameMatch = cname.endsWith(namePattern); break;
-                                    case EXACT:     nameMatch = cname.equals(namePattern); break;
-                                    case ANY_MATCH: nameMatch = cname.contains(namePattern); break;
-                                }
-                            }
-                            if (valuePattern != null && valueMode != null) {
-                                switch (valueMode) {
-                                    case PREFIX:    valueMatch = cval.startsWith(valuePattern); break;
-                                    case SUFFIX:    valueMatch = cval.endsWith(valuePattern); break;
-                                    case EXACT:     valueMatch = cval.equals(valuePattern); break;
-                                    case ANY_MATCH: valueMatch = cval.contains(valuePattern); break;
-                                }
-                            }
-                            if (nameMatch && valueMatch) return true;
-                        }
-                    }
-                }
-                return false;
-            case METHOD:
-                String[] headerLines = headersBlock.split("\r\n");
-                if (headerLines.length == 0) return false;
-                String firstLine = headerLines[0];
-                String[] methodParts = firstLine.split(" ");
-                if (methodParts.length == 0) return false;
-                String method = methodParts[0];
-                String mPattern = rule.getPattern();
-                return mPattern != null && method.equalsIgnoreCase(mPattern);
-            case BODY:
-                String bodyPattern = rule.getPattern();
-                return bodyPattern != null && body.matches(bodyPattern);
-            case CUSTOM:
-                return evaluateJsRule(rule, headersBlock, body);
-            default:
-                return false;
-        }
-    }
-
-
-    private static String extractUrlFromRequestLine(String headersBlock) {
-        if (headersBlock == null) return null;
-        String[] lines = headersBlock.split("\r\n", 2);
-        if (lines.length == 0) return null;
-        String[] reqParts = lines[0].split(" ");
-        return reqParts.length > 1 ? reqParts[1] : null;
-    }
-
-    private static boolean evaluateJsRule(httpraider.model.network.LoadBalancingRule rule, String headersBlock, String body) {
-        String jsCode = rule.getJsCode();
-        if (jsCode == null || jsCode.trim().isEmpty()) return false;
-        try {
-            // Use your JS engine, here we assume you have a static method in JSEngine:
-            // boolean result = JSEngine.runRule(jsCode, headersBlock, body);
-            // Replace with your JS execution logic:
-            Object res = JSEngine.runJsBooleanRule(jsCode, headersBlock, body);
-            if (res instanceof Boolean) return (Boolean) res;
-            if (res instanceof String) return Boolean.parseBoolean((String) res);
-            return false;
-        } catch (Exception ex) {
-            return false;
-        }
-    }
-
-
 }
@@ -0,0 +1,234 @@
+package httpraider.parser;
+
+import httpraider.model.network.FirewallRule;
+import httpraider.model.network.HttpParserModel;
+import httpraider.model.network.LoadBalancingRule;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.regex.Pattern;
+
+// Everything a proxy's parser settings decode to, worked out once per edit of the model instead of once per request
+public final class ParserPlan {
+
+    private static final Map<HttpParserModel, ParserPlan> CACHE = new WeakHashMap<>();
+
+    private final int version;
+
+    private final List<String> headerLineEndings;
+    private final byte[][] headerDelimiters;
+    private final int longestHeaderDelimiter;
+    private final Pattern headerLinePattern;
+    private final HeaderScanner headerScanner;
+    private final String bestHeaderLineEnding;
+
+    private final List<String> deleteHeaderRules;
+    private final List<String> addHeaderRules;
+
+    private final List<String> requestLineDelimiters;
+    private final String rewriteFromMethod;
+    private final String rewriteToMethod;
+    private final int urlDecodeFrom;
+    private final int urlDecodeTo;
+    private final String forcedHttpVersion;
+
+    private final List<HttpParserModel.BodyLenHeaderRule> bodyLenHeaderRules;
+    private final byte[] chunkedLineEnding;
+
+    private final List<LoadBalancingRule> loadBalancingRules;
+    private final LoadBalancingMatcher loadBalancingMatcher;
+    private final List<FirewallRule> firewallRules;
+    private final FirewallPipeline firewallPipeline;
+
+    public static ParserPlan of(HttpParserModel model) {
+        synchronized (CACHE) {
+            ParserPlan plan = CACHE.get(model);
+            if (plan == null || plan.version != model.getVersion()) {
+                plan = new ParserPlan(model);
+                CACHE.put(model, plan);
+            }
+            return plan;
+        }
+    }
+
+    private ParserPlan(HttpParserModel model) {
+        version = model.getVersion();
+
+        List<String> endings = new ArrayList<>();
+        if (model.getHeaderLineEndings() != null) {
+            for (String ending : model.getHeaderLineEndings()) endings.add(ParserUtils.decodeEscapedSequenceStr(ending));
+        }
+        headerLineEndings = List.copyOf(endings);
+
+        // every pair of line endings, in the order splitHeaders has always tried them
+        headerDelimiters = new byte[endings.size() * endings.size()][];
+        int n = 0;
+        int longest = 0;
+        for (String first : endings) {
+            for (String second : endings) {
+                headerDelimiters[n] = (first + second).getBytes(StandardCharsets.ISO_8859_1);
+                longest = Math.max(longest, headerDelimiters[n++].length);
+            }
+        }
+        longestHeaderDelimiter = longest;
+
+        // an empty ending matches everywhere, which only the original regex and search reproduce
+        if (!endings.isEmpty() && !endings.contains("")) {
+            List<byte[]> endingBytes = new ArrayList<>();
+            for (String ending : endings) endingBytes.add(ending.getBytes(StandardCharsets.ISO_8859_1));
+            headerScanner = new HeaderScanner(endingBytes);
+        } else {
+            headerScanner = null;
+        }
+        if (endings.isEmpty()) {
+            headerLinePattern = null;
+        } else {
+            StringBuilder alternatives = new StringBuilder();
+            for (int i = 0; i < endings.size(); i++) {
+                if (i > 0) alternatives.append("|");
+                alternatives.append(Pattern.quote(endings.get(i)));
+            }
+            headerLinePattern = Pattern.compile("(.*?(?:" + alternatives + "))", Pattern.DOTALL);
+        }
+        bestHeaderLineEnding = bestEnding(endings);
+
+        deleteHeaderRules = nonEmpty(model.getDeleteHeaderRules());
+        addHeaderRules = nonEmpty(model.getAddHeaderRules());
+
+        List<String> delimiters = new ArrayList<>();
+        if (model.getRequestLineDelimiters() != null) {
+            for (String delimiter : model.getRequestLineDelimiters()) delimiters.add(ParserUtils.decodeEscapedSequenceStr(delimiter));
+        }
+        requestLineDelimiters = List.copyOf(delimiters);
+
+        String from = model.getFromMethod();
+        String to = model.getToMethod();
+        boolean rewrite = model.isRewriteMethodEnabled() && from != null && !from.isEmpty() && to != null && !to.isEmpty();
+        rewriteFromMethod = rewrite ? from : null;
+        rewriteToMethod = rewrite ? to : null;
+
+        int decodeFrom = -1, decodeTo = -1;
+        if (model.isDecodeUrlBeforeForwarding() && model.getUrlDecodeFrom() != null && model.getUrlDecodeTo() != null) {
+            try {
+                decodeFrom = Integer.parseInt(model.getUrlDecodeFrom().replace("%", ""), 16);
+                decodeTo = Integer.parseInt(model.getUrlDecodeTo().replace("%", ""), 16);
+            } catch (NumberFormatException e) {
+                decodeFrom = decodeTo = -1;
+            }
+        }
+        urlDecodeFrom = decodeFrom;
+        urlDecodeTo = decodeTo;
+
+        String forced = null;
+        if (model.getForcedHttpVersion() != null) {
+            switch (model.getForcedHttpVersion()) {
+                case HTTP_1_0 -> forced = "HTTP/1.0";
+                case HTTP_1_1 -> forced = "HTTP/1.1";
+                case AUTO -> {
+                    String custom = model.getCustomHttpVersion();
+                    if (custom != null && !custom.isEmpty()) forced = custom;
+                }
+            }
+        }
+        forcedHttpVersion = forced;
+
+        List<HttpParserModel.BodyLenHeaderRule> rules = new ArrayList<>();
+        if (model.getBodyLenHeaderRules() != null) {
+            for (HttpParserModel.BodyLenHeaderRule rule : model.getBodyLenHeaderRules()) {
+                if (rule.getPattern() != null && !rule.getPattern().trim().isEmpty()) rules.add(rule);
+            }
+        }
+        bodyLenHeaderRules = List.copyOf(rules);
+
+        List<String> chunkedEndings = model.getChunkedLineEndings();
+        chunkedLineEnding = chunkedEndings != null && !chunkedEndings.isEmpty()
+                ? ParserUtils.decodeEscapedSequence(chunkedEndings.get(0))
+                : new byte[]{'\r', '\n'};
+
+        List<LoadBalancingRule> balancing = new ArrayList<>();
+        if (model.getLoadBalancingRules() != null) {
+            for (LoadBalancingRule rule : model.getLoadBalancingRules()) {
+                if (rule.isEnabled()) balancing.add(rule);
+            }
+        }
+        loadBalancingRules = List.copyOf(balancing);
+        loadBalancingMatcher = new LoadBalancingMatcher(loadBalancingRules);
+
+        List<FirewallRule> firewall = new ArrayList<>();
+        if (model.getFirewallRules() != null) {
+            for (FirewallRule rule : model.getFirewallRules()) {
+                if (rule.isEnabled()) firewall.add(rule);
+            }
+        }
+        firewallRules = List.copyOf(firewall);
+        firewallPipeline = new FirewallPipeline(firewallRules);
+    }
+
+    // Decoded header line endings, in configured order
+    public List<String> headerLineEndings() { return headerLineEndings; }
+
+    // Every ending followed by every ending: the candidates for the header/body delimiter
+    public byte[][] headerDelimiters() { return headerDelimiters; }
+
+    public int longestHeaderDelimiter() { return longestHeaderDelimiter; }
+
+    // Null when no line endings are configured
+    public Pattern headerLinePattern() { return headerLinePattern; }
+
+    // Null when no line endings are configured or one of them is empty
+    HeaderScanner headerScanner() { return headerScanner; }
+
+    public String bestHeaderLineEnding() { return bestHeaderLineEnding; }
+
+    public List<String> deleteHeaderRules() { return deleteHeaderRules; }
+    public List<String> addHeaderRules() { return addHeaderRules; }
+
+    // Decoded request line delimiters, in configured order
+    public List<String> requestLineDelimiters() { return requestLineDelimiters; }
+
+    // Null unless a complete method rewrite is configured
+    public String rewriteFromMethod() { return rewriteFromMethod; }
+    public String rewriteToMethod() { return rewriteToMethod; }
+
+    // Inclusive byte range to percent-decode in the URL; both -1 when decoding is off or the range is invalid
+    public int urlDecodeFrom() { return urlDecodeFrom; }
+    public int urlDecodeTo() { return urlDecodeTo; }
+
+    // Null when the request line keeps its own version
+    public String forcedHttpVersion() { return forcedHttpVersion; }
+
+    public List<HttpParserModel.BodyLenHeaderRule> bodyLenHeaderRules() { return bodyLenHeaderRules; }
+    public byte[] chunkedLineEnding() { return chunkedLineEnding; }
+
+    // Only the enabled rules
+    public List<LoadBalancingRule> loadBalancingRules() { return loadBalancingRules; }
+    LoadBalancingMatcher loadBalancingMatcher() { return loadBalancingMatcher; }
+    public List<FirewallRule> firewallRules() { return firewallRules; }
+    FirewallPipeline firewallPipeline() { return firewallPipeline; }
+
+    // The decoded ending the line ends with, or "" if none
+    public String lineEndingOf(String line) {
+        for (String ending : headerLineEndings) {
+            if (line.endsWith(ending)) return ending;
+        }
+        return "";
+    }
+
+    // CRLF if present, else LF if present, else the first in the list
+    private static String bestEnding(List<String> endings) {
+        if (endings.isEmpty()) return "\r\n";
+        if (endings.contains("\r\n")) return "\r\n";
+        if (endings.contains("\n")) return "\n";
+        return endings.get(0);
+    }
+
+    private static List<String> nonEmpty(List<String> values) {
+        List<String> result = new ArrayList<>();
+        if (values != null) {
+            for (String value : values) {
+                if (value != null && !value.isEmpty()) result.add(value);
+            }
+        }
+        return List.copyOf(result);
+    }
+}
@@ -1,5 +1,6 @@
 package httpraider.parser;
 
+import httpraider.controller.engines.ByteView;
 import httpraider.controller.engines.JSEngine;
 import httpraider.model.network.HttpParserModel;
 
@@ -33,7 +34,7 @@ public class ParserUtils {
         return new String(decodeEscapedSequence(s), StandardCharsets.ISO_8859_1);
     }
 
-    private static int indexOf(byte[] data, byte[] pattern, int start) {
+    static int indexOf(byte[] data, byte[] pattern, int start) {
         outer:
         for (int i = start; i <= data.length - pattern.length; i++) {
             for (int j = 0; j < pattern.length; j++) {
@@ -44,63 +45,64 @@ public class ParserUtils {
         return -1;
     }
 
-    private static int[] findFirstSeq(byte[] data, int start, List<String> seqs) {
-        int firstIdx = -1, seqLen = 0;
-        for (String seq : seqs) {
-            byte[] s = decodeEscapedSequence(seq);
-            int idx = indexOf(data, s, start);
-            if (idx >= 0 && (firstIdx == -1 || idx < firstIdx)) {
-                firstIdx = idx;
-                seqLen = s.length;
-            }
+    public static ParserResult splitHeaders(HttpParserModel model, byte[] data) {
+        return splitHeaders(ParserPlan.of(model), data);
+    }
+
+    public static ParserResult splitHeaders(ParserPlan plan, byte[] data) {
+        HeaderSlice headers = sliceHeaders(plan, data, 0);
+        if (headers.error() != null) {
+            return new ParserResult(data, new byte[0], headers.error());
         }
-        return new int[] { firstIdx, seqLen };
+        return new ParserResult(headers.toByteArray(), Arrays.copyOfRange(data, headers.end(), data.length), null);
     }
 
-    public static ParserResult splitHeaders(HttpParserModel model, byte[] data) {
-        List<String> seqs = model.getHeaderLineEndings();
+    // Header block of the request starting at data[from]; without a delimiter it runs to the end of data
+    public static HeaderSlice sliceHeaders(ParserPlan plan, byte[] data, int from) {
+        HeaderScanner scanner = plan.headerScanner();
+        if (scanner != null) {
+            HeaderScanner.Scan scan = scanner.scan(data, from, data.length);
+            int end = scan.headersEnd();
+            if (end < 0) {
+                return new HeaderSlice(data, from, data.length, -1, scan.lineEnds(data.length), "Header/body delimiter not found");
+            }
+            return new HeaderSlice(data, from, end, scan.delimiterStart(), scan.lineEnds(end), null);
+        }
+
         int splitIndex = -1;
         byte[] foundSeq = null;
         
         // First try to find double line endings (header/body delimiter)
-        for (int i = 0; i < seqs.size(); i++) {
-            for (int j = 0; j < seqs.size(); j++) {
-                byte[] seq1 = decodeEscapedSequence(seqs.get(i));
-                byte[] seq2 = decodeEscapedSequence(seqs.get(j));
-                byte[] combined = new byte[seq1.length + seq2.length];
-                System.arraycopy(seq1, 0, combined, 0, seq1.length);
-                System.arraycopy(seq2, 0, combined, seq1.length, seq2.length);
-                int idx = indexOf(data, combined, 0);
-                if (idx >= 0 && (splitIndex == -1 || idx < splitIndex)) {
-                    splitIndex = idx;
-                    foundSeq = combined;
-                }
+        for (byte[] combined : plan.headerDelimiters()) {
+            int idx = indexOf(data, combined, from);
+            if (idx >= 0 && (splitIndex == -1 || idx < splitIndex)) {
+                splitIndex = idx;
+                foundSeq = combined;
             }
         }
         
-        if (splitIndex == -1 || foundSeq == null) {
-            return new ParserResult(data, new byte[0], "Header/body delimiter not found");
-        }
-        int end = splitIndex + foundSeq.length;
-        byte[] headers = Arrays.copyOfRange(data, 0, end);
-        byte[] rest = Arrays.copyOfRange(data, end, data.length);
-        return new ParserResult(headers, rest, null);
+        int end = splitIndex == -1 ? data.length : splitIndex + foundSeq.length;
+        List<String> lines = splitHeaderLines(plan, Arrays.copyOfRange(data, from, end));
+        return new HeaderSlice(data, from, end, splitIndex, lines, splitIndex == -1 ? "Header/body delimiter not found" : null);
     }
 
     public static List<String> splitHeaderLines(HttpParserModel model, byte[] headersBytes) {
+        return splitHeaderLines(ParserPlan.of(model), headersBytes);
+    }
+
+    public static List<String> splitHeaderLines(ParserPlan plan, byte[] headersBytes) {
+        HeaderScanner scanner = plan.headerScanner();
+        if (scanner != null) {
+            int[] ends = scanner.lineEnds(headersBytes, 0, headersBytes.length);
+            return new HeaderSlice(headersBytes, 0, headersBytes.length, -1, ends, null).lines();
+        }
         String headers = new String(headersBytes, StandardCharsets.ISO_8859_1);
-        List<String> seqs = model.getHeaderLineEndings();
-        if (seqs == null || seqs.isEmpty()) {
+        Pattern pattern = plan.headerLinePattern();
+        if (pattern == null) {
             List<String> l = new ArrayList<>();
             l.add(headers);
             return l;
         }
-        StringBuilder patternBuilder = new StringBuilder();
-        for (int i = 0; i < seqs.size(); i++) {
-            if (i > 0) patternBuilder.append("|");
-            patternBuilder.append(Pattern.quote(decodeEscapedSequenceStr(seqs.get(i))));
-        }
-        Pattern pattern = Pattern.compile("(.*?(?:" + patternBuilder + "))", Pattern.DOTALL);
 
         List<String> result = new ArrayList<>();
         Matcher matcher = pattern.matcher(headers);
@@ -118,9 +120,19 @@ public class ParserUtils {
 
     public static String[] splitRequestLineSimultaneous(String requestLine, List<String> delimiters) {
         if (delimiters == null || delimiters.isEmpty()) return null;
+        List<String> decoded = new ArrayList<>();
+        for (String delim : delimiters) decoded.add(decodeEscapedSequenceStr(delim));
+        return splitRequestLineDecoded(requestLine, decoded);
+    }
+
+    public static String[] splitRequestLineSimultaneous(String requestLine, ParserPlan plan) {
+        if (plan.requestLineDelimiters().isEmpty()) return null;
+        return splitRequestLineDecoded(requestLine, plan.requestLineDelimiters());
+    }
+
+    private static String[] splitRequestLineDecoded(String requestLine, List<String> delimiters) {
         List<DelimiterMatch> matches = new ArrayList<>();
-        for (String delim : delimiters) {
-            String delimStr = decodeEscapedSequenceStr(delim);
+        for (String delimStr : delimiters) {
             int idx = requestLine.indexOf(delimStr);
             while (idx >= 0) {
                 matches.add(new DelimiterMatch(idx, delimStr.length(), delimStr));
@@ -157,8 +169,8 @@ public class ParserUtils {
         if (!model.isUseHeaderLinesJs()) return headerLines;
         try {
             return JSEngine.runSplitHeaderScript(headerLines, mergeStringsToBytes(headerLines), model.getHeaderLinesScript());
-        } catch (Exception e) {
-            throw new RuntimeException("HeaderLines JS Error: " + e);
+        } catch (Exception | JSEngine.ScriptBudgetExceeded e) {
+            throw new RuntimeException("HeaderLines JS Error: " + e, e);
         }
     }
 
@@ -167,24 +179,29 @@ public class ParserUtils {
         try {
             String out = JSEngine.runTagEngine(model.getRequestLineScript(), requestLine);
             return out == null ? requestLine : out;
-        } catch (Exception e) {
-            throw new RuntimeException("RequestLine JS Error: " + e);
+        } catch (Exception | JSEngine.ScriptBudgetExceeded e) {
+            throw new RuntimeException("RequestLine JS Error: " + e, e);
         }
     }
 
     public static MessageLengthHeaderResult getMessageBodyByHeaderRules(HttpParserModel model, List<String> headerLines, byte[] body) {
-        List<HttpParserModel.BodyLenHeaderRule> rules = model.getBodyLenHeaderRules();
-        if (rules == null || rules.isEmpty()) {
-            return new MessageLengthHeaderResult(headerLines, new byte[0], body, null, 0, null);
-        }
-        Map<String, List<String>> headerMap = new LinkedHashMap<>();
-        for (String line : headerLines) {
-            int idx = line.indexOf(':');
-            if (idx > 0) {
-                String name = line.substring(0, idx).trim().toLowerCase();
-                String value = line.substring(idx + 1).trim();
-                headerMap.computeIfAbsent(name, k -> new ArrayList<>()).add(value);
-            }
+        return getMessageBodyByHeaderRules(ParserPlan.of(model), headerLines, body);
+    }
+
+    public static MessageLengthHeaderResult getMessageBodyByHeaderRules(ParserPlan plan, List<String> headerLines, byte[] body) {
+        return getMessageBodyByHeaderRules(plan, headerLines, body, 0);
+    }
+
+    public static MessageLengthHeaderResult getMessageBodyByHeaderRules(ParserPlan plan, List<String> headerLines, byte[] data, int from) {
+        return getMessageBodyByHeaderRules(plan, HeaderTable.of(headerLines), data, from);
+    }
+
+    // The body starts at data[from]; it and whatever follows stay in data as offsets
+    public static MessageLengthHeaderResult getMessageBodyByHeaderRules(ParserPlan plan, HeaderTable headers, byte[] data, int from) {
+        List<String> headerLines = headers.lines();
+        List<HttpParserModel.BodyLenHeaderRule> rules = plan.bodyLenHeaderRules();
+        if (rules.isEmpty()) {
+            return new MessageLengthHeaderResult(headerLines, data, from, from, null, from, null, 0);
         }
         boolean isChunked = false;
         int contentLength = -1;
@@ -193,20 +210,24 @@ public class ParserUtils {
         // Check each rule against the headers
         for (HttpParserModel.BodyLenHeaderRule rule : rules) {
             String pattern = rule.getPattern();
-            if (pattern == null || pattern.trim().isEmpty()) continue;
+            String trimmedPattern = rule.isChunked() ? pattern.trim() : null;
             
             // Look for headers that match this pattern
-            for (String headerLine : headerLines) {
+            for (int i = 0; i < headers.size(); i++) {
+                int lineStart = headers.start(i);
+                int lineEnd = headers.end(i);
                 if (rule.isChunked()) {
                     // For chunked headers: exact match
-                    if (headerLine.trim().equals(pattern.trim())) {
+                    if (headers.equals(headers.trimStart(lineStart, lineEnd), headers.trimEnd(lineStart, lineEnd), trimmedPattern)) {
                         isChunked = true;
                         break;
                     }
                 } else {
                     // For content-length headers: prefix match
-                    if (headerLine.startsWith(pattern)) {
-                        String valueStr = headerLine.substring(pattern.length()).trim();
+                    if (headers.startsWith(lineStart, lineEnd, pattern)) {
+                        int valueStart = headers.trimStart(lineStart + pattern.length(), lineEnd);
+                        String valueStr = new String(headers.block(), valueStart,
+                                headers.trimEnd(valueStart, lineEnd) - valueStart, StandardCharsets.ISO_8859_1);
                         try {
                             contentLength = Integer.parseInt(valueStr);
                         } catch (NumberFormatException e) {
@@ -224,34 +245,30 @@ public class ParserUtils {
         }
         
         if (error != null) {
-            return new MessageLengthHeaderResult(headerLines, new byte[0], body, error, 0, null);
+            return new MessageLengthHeaderResult(headerLines, data, from, from, null, from, error, 0);
         }
         
         // Handle chunked encoding
         if (isChunked) {
             // Basic chunked encoding parsing
-            ChunkedParseResult chunkedResult = parseChunkedBody(body, model.getChunkedLineEndings());
-            byte[] decodedBody = chunkedResult.decodedBody;
-            byte[] remaining = new byte[body.length - chunkedResult.bytesConsumed];
-            System.arraycopy(body, chunkedResult.bytesConsumed, remaining, 0, remaining.length);
+            ChunkedParseResult chunkedResult = parseChunkedBody(data, from, plan.chunkedLineEnding());
             
             // Return decoded body and remaining bytes without setting chunkedIncompleteTag
-            return new MessageLengthHeaderResult(headerLines, decodedBody, remaining, null, 0, null);
+            return new MessageLengthHeaderResult(headerLines, data, -1, -1, chunkedResult.decodedBody,
+                    from + chunkedResult.bytesConsumed, null, 0, !chunkedResult.settled);
         }
         
         // Handle Content-Length
+        int available = data.length - from;
         if (contentLength >= 0) {
-            if (contentLength > body.length) {
-                int missing = contentLength - body.length;
-                byte[] partial = Arrays.copyOfRange(body, 0, body.length);
-                return new MessageLengthHeaderResult(headerLines, partial, new byte[0], null, missing, null);
+            if (contentLength > available) {
+                int missing = contentLength - available;
+                return new MessageLengthHeaderResult(headerLines, data, from, data.length, null, data.length, null, missing);
             }
-            byte[] reqBody = Arrays.copyOfRange(body, 0, contentLength);
-            byte[] remaining = Arrays.copyOfRange(body, contentLength, body.length);
-            return new MessageLengthHeaderResult(headerLines, reqBody, remaining, null, 0, null);
+            return new MessageLengthHeaderResult(headerLines, data, from, from + contentLength, null, from + contentLength, null, 0);
         }
         // No relevant header found, treat as Content-Length 0
-        return new MessageLengthHeaderResult(headerLines, new byte[0], body, null, 0, null);
+        return new MessageLengthHeaderResult(headerLines, data, from, from, null, from, null, 0);
     }
 
     public static class HeaderLinesBodyEncodingResult {
@@ -264,6 +281,11 @@ public class ParserUtils {
     }
 
     public static HeaderLinesBodyEncodingResult runMessageLengthJs(HttpParserModel model, List<String> headerLines, byte[] body, byte[] buffer) {
+        return runMessageLengthJs(model, headerLines, body, new ByteView(buffer));
+    }
+
+    // The buffer is read in place; the script only copies it out by reading it as a string
+    public static HeaderLinesBodyEncodingResult runMessageLengthJs(HttpParserModel model, List<String> headerLines, byte[] body, ByteView buffer) {
         if (!model.isUseMessageLengthJs()) return new HeaderLinesBodyEncodingResult(headerLines, body);
         try {
             byte[][] res = JSEngine.runBodyLenScript(headerLines, body, buffer, model.getMessageLengthScript());
@@ -273,8 +295,8 @@ public class ParserUtils {
                 outHeaderLines = List.of(h.split("\\r?\\n"));
             }
             return new HeaderLinesBodyEncodingResult(outHeaderLines, res[0]);
-        } catch (Exception e) {
-            throw new RuntimeException("MessageLength JS Error: " + e);
+        } catch (Exception | JSEngine.ScriptBudgetExceeded e) {
+            throw new RuntimeException("MessageLength JS Error: " + e, e);
         }
     }
 
@@ -287,30 +309,33 @@ public class ParserUtils {
     private static class ChunkedParseResult {
         final byte[] decodedBody;
         final int bytesConsumed;
+        // false when the body stopped at the end of the buffer rather than at its last chunk or a bad size line
+        final boolean settled;
         
         ChunkedParseResult(byte[] decodedBody, int bytesConsumed) {
+            this(decodedBody, bytesConsumed, false);
+        }
+
+        ChunkedParseResult(byte[] decodedBody, int bytesConsumed, boolean settled) {
             this.decodedBody = decodedBody;
             this.bytesConsumed = bytesConsumed;
+            this.settled = settled;
         }
     }
     
-    private static ChunkedParseResult parseChunkedBody(byte[] body, List<String> lineEndings) {
-        if (body == null || body.length == 0) return new ChunkedParseResult(new byte[0], 0);
-        
-        // Use default line ending if none specified
-        byte[] lineEnding = (lineEndings != null && !lineEndings.isEmpty()) 
-            ? decodeEscapedSequence(lineEndings.get(0)) 
-            : new byte[]{'\r', '\n'};
+    // Decodes the chunked body starting at body[from]; bytesConsumed is counted from there
+    private static ChunkedParseResult parseChunkedBody(byte[] body, int from, byte[] lineEnding) {
+        if (body == null || body.length == from) return new ChunkedParseResult(new byte[0], 0);
         
         ByteArrayOutputStream result = new ByteArrayOutputStream();
-        int pos = 0;
+        int pos = from;
         
         while (pos < body.length) {
             // Find chunk size line
             int lineEnd = indexOf(body, lineEnding, pos);
             if (lineEnd == -1) {
                 // No line ending found - return what we have so far
-                return new ChunkedParseResult(result.toByteArray(), pos);
+                return new ChunkedParseResult(result.toByteArray(), pos - from);
             }
             
             String sizeLine = new String(body, pos, lineEnd - pos, StandardCharsets.ISO_8859_1);
@@ -328,7 +353,7 @@ public class ParserUtils {
                 chunkSize = Integer.parseInt(sizeStr, 16);
             } catch (NumberFormatException e) {
                 // Invalid chunk size - return what we have so far
-                return new ChunkedParseResult(result.toByteArray(), pos);
+                return new ChunkedParseResult(result.toByteArray(), pos - from, true);
             }
             
             // Last chunk (size 0)
@@ -343,7 +368,7 @@ public class ParserUtils {
                     if (nextLineEnd == trailerEnd) {
                         // Found empty line, skip past it
                         pos = trailerEnd + lineEnding.length;
-                        break;
+                        return new ChunkedParseResult(result.toByteArray(), pos - from, true);
                     }
                     trailerEnd = nextLineEnd + lineEnding.length;
                 }
@@ -353,7 +378,7 @@ public class ParserUtils {
             // Check if we have enough data for this chunk
             if (pos + chunkSize > body.length) {
                 // Not enough data - return what we have so far
-                return new ChunkedParseResult(result.toByteArray(), pos);
+                return new ChunkedParseResult(result.toByteArray(), pos - from);
             }
             
             result.write(body, pos, chunkSize);
@@ -365,6 +390,6 @@ public class ParserUtils {
             }
         }
         
-        return new ChunkedParseResult(result.toByteArray(), pos);
+        return new ChunkedParseResult(result.toByteArray(), pos - from);
     }
 }
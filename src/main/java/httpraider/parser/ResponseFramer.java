@@ -0,0 +1,250 @@
+package httpraider.parser;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+// Finds where each HTTP/1.x response starts and ends as bytes arrive, without looking at any byte twice.
+// Responses are framed from their own headers only: which request each one answers is unknown, since the sent bytes
+// need not split into requests the way the server reads them. A response to HEAD that declares a Content-Length or
+// chunked body therefore swallows the bytes after it as its body, and the frames from there on are off.
+public final class ResponseFramer {
+
+    public record Frame(long start, long end, int status) {
+        public boolean isComplete() {
+            return end >= 0;
+        }
+    }
+
+    private enum State { STATUS_LINE, HEADERS, FIXED_BODY, CHUNK_SIZE, CHUNK_DATA, CHUNK_DATA_END, TRAILERS, UNTIL_CLOSE }
+
+    private static final int MAX_LINE = 64 * 1024;
+
+    private final ByteArrayOutputStream line = new ByteArrayOutputStream();
+    private State state = State.STATUS_LINE;
+    private long position;
+    private long remaining;
+    private boolean chunked;
+    private long contentLength;
+    private int status;
+
+    private long[] starts = new long[16];
+    private long[] ends = new long[16];
+    private int[] statuses = new int[16];
+    private int count;
+
+    public synchronized void feed(byte[] data, int offset, int length) {
+        int end = offset + length;
+        int i = offset;
+        while (i < end) {
+            switch (state) {
+                case FIXED_BODY, CHUNK_DATA -> {
+                    int n = (int) Math.min(remaining, end - i);
+                    i += n;
+                    position += n;
+                    remaining -= n;
+                    if (remaining == 0) {
+                        if (state == State.FIXED_BODY) {
+                            finishFrame();
+                        } else {
+                            state = State.CHUNK_DATA_END;
+                        }
+                    }
+                }
+                case UNTIL_CLOSE -> {
+                    position += end - i;
+                    i = end;
+                }
+                default -> {
+                    int lf = indexOf(data, i, end, (byte) '\n');
+                    int stop = lf < 0 ? end : lf + 1;
+                    if (state == State.STATUS_LINE && line.size() == 0 && !isLineStart(data[i])) {
+                        // stray bytes between responses are not part of any frame
+                        position++;
+                        i++;
+                        continue;
+                    }
+                    if (state == State.STATUS_LINE && line.size() == 0) openFrame();
+                    if (line.size() + (stop - i) <= MAX_LINE) line.write(data, i, stop - i);
+                    position += stop - i;
+                    i = stop;
+                    if (lf >= 0) {
+                        onLine(trimLine(line.toByteArray()));
+                        line.reset();
+                    }
+                }
+            }
+        }
+    }
+
+    // Bytes the queue holds that didn't come from the peer, such as an error note; they are part of no frame
+    public synchronized void skip(int length) {
+        position += length;
+    }
+
+    // The peer closed the connection, which ends a response delimited by the close. One cut short before the length
+    // its headers declared stays incomplete
+    public synchronized void close() {
+        if (count > 0 && ends[count - 1] < 0 && state == State.UNTIL_CLOSE) {
+            finishFrame();
+        }
+        line.reset();
+        state = State.UNTIL_CLOSE;
+    }
+
+    public synchronized void reset() {
+        line.reset();
+        state = State.STATUS_LINE;
+        position = 0;
+        count = 0;
+    }
+
+    public synchronized int count() {
+        return count;
+    }
+
+    public synchronized int completeCount() {
+        return count > 0 && ends[count - 1] < 0 ? count - 1 : count;
+    }
+
+    public synchronized Frame frame(int index) {
+        return new Frame(starts[index], ends[index], statuses[index]);
+    }
+
+    // Index of the frame containing the given position, or of the last frame starting before it; -1 if none
+    public synchronized int indexAt(long position) {
+        int i = Arrays.binarySearch(starts, 0, count, position);
+        return i >= 0 ? i : -i - 2;
+    }
+
+    private void onLine(byte[] text) {
+        switch (state) {
+            case STATUS_LINE -> {
+                status = parseStatus(text);
+                statuses[count - 1] = status;
+                chunked = false;
+                contentLength = -1;
+                // without a status line nothing after it can be framed reliably
+                state = startsWith(text, "HTTP/") ? State.HEADERS : State.UNTIL_CLOSE;
+            }
+            case HEADERS -> {
+                if (text.length == 0) {
+                    startBody();
+                } else {
+                    onHeader(new String(text, StandardCharsets.ISO_8859_1));
+                }
+            }
+            case CHUNK_SIZE -> {
+                long size = parseChunkSize(new String(text, StandardCharsets.ISO_8859_1));
+                if (size < 0) {
+                    state = State.UNTIL_CLOSE;
+                } else if (size == 0) {
+                    state = State.TRAILERS;
+                } else {
+                    remaining = size;
+                    state = State.CHUNK_DATA;
+                }
+            }
+            case CHUNK_DATA_END -> state = State.CHUNK_SIZE;
+            case TRAILERS -> {
+                if (text.length == 0) finishFrame();
+            }
+            default -> {
+            }
+        }
+    }
+
+    private void onHeader(String header) {
+        int colon = header.indexOf(':');
+        if (colon <= 0) return;
+        String name = header.substring(0, colon).trim();
+        String value = header.substring(colon + 1).trim();
+        if (name.equalsIgnoreCase("Transfer-Encoding") && value.toLowerCase().contains("chunked")) {
+            chunked = true;
+        } else if (name.equalsIgnoreCase("Content-Length") && contentLength < 0) {
+            try {
+                contentLength = Long.parseLong(value);
+            } catch (NumberFormatException ignored) {
+            }
+        }
+    }
+
+    private void startBody() {
+        if ((status >= 100 && status < 200) || status == 204 || status == 304) {
+            finishFrame();
+        } else if (chunked) {
+            state = State.CHUNK_SIZE;
+        } else if (contentLength == 0) {
+            finishFrame();
+        } else if (contentLength > 0) {
+            remaining = contentLength;
+            state = State.FIXED_BODY;
+        } else {
+            state = State.UNTIL_CLOSE;
+        }
+    }
+
+    private void openFrame() {
+        if (count == starts.length) {
+            starts = Arrays.copyOf(starts, count * 2);
+            ends = Arrays.copyOf(ends, count * 2);
+            statuses = Arrays.copyOf(statuses, count * 2);
+        }
+        starts[count] = position;
+        ends[count] = -1;
+        statuses[count] = 0;
+        count++;
+    }
+
+    private void finishFrame() {
+        ends[count - 1] = position;
+        state = State.STATUS_LINE;
+    }
+
+    private static boolean isLineStart(byte b) {
+        return b != '\r' && b != '\n';
+    }
+
+    private static boolean startsWith(byte[] line, String prefix) {
+        if (line.length < prefix.length()) return false;
+        for (int i = 0; i < prefix.length(); i++) {
+            if (line[i] != prefix.charAt(i)) return false;
+        }
+        return true;
+    }
+
+    private static int parseStatus(byte[] line) {
+        int space = indexOf(line, 0, line.length, (byte) ' ');
+        if (space < 0 || space + 4 > line.length) return 0;
+        int code = 0;
+        for (int i = space + 1; i < space + 4; i++) {
+            if (line[i] < '0' || line[i] > '9') return 0;
+            code = code * 10 + (line[i] - '0');
+        }
+        return code;
+    }
+
+    private static long parseChunkSize(String line) {
+        int ext = line.indexOf(';');
+        String hex = (ext < 0 ? line : line.substring(0, ext)).trim();
+        try {
+            return hex.isEmpty() ? -1 : Long.parseLong(hex, 16);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static byte[] trimLine(byte[] line) {
+        int end = line.length;
+        if (end > 0 && line[end - 1] == '\n') end--;
+        if (end > 0 && line[end - 1] == '\r') end--;
+        return end == line.length ? line : Arrays.copyOf(line, end);
+    }
+
+    private static int indexOf(byte[] data, int from, int to, byte b) {
+        for (int i = from; i < to; i++) {
+            if (data[i] == b) return i;
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,90 @@
+package httpraider.parser;
+
+import httpraider.controller.NetworkController;
+import httpraider.model.network.ProxyModel;
+
+import java.util.*;
+
+// The live counterpart of ParserChainRunner.parseFinalGroupsForPanel: every chunk the client sends walks the network
+// like a Test run, but each proxy keeps a StreamingParser and passes on only the requests it has settled
+public final class StreamingChain {
+
+    // Per proxy, older settled requests are dropped past this so a long flood doesn't pile up in the views
+    private static final int MAX_SETTLED_REQUESTS = 1000;
+
+    private final NetworkController networkController;
+    private final Map<String, StreamingParser> parsers = new HashMap<>();
+    private final Map<String, Deque<byte[]>> settled = new HashMap<>();
+    private final Map<String, List<byte[]>> pending = new HashMap<>();
+    // load balancing rules stopped for running past the script budget stay stopped until the stream is reset
+    private NetworkTopology.StoppedRules stoppedRules = new NetworkTopology.StoppedRules();
+
+    public StreamingChain(NetworkController networkController) {
+        this.networkController = networkController;
+    }
+
+    public synchronized void feed(byte[] data) {
+        if (data.length == 0) return;
+        NetworkTopology topology = NetworkTopology.of(networkController);
+
+        if (topology.client() < 0) {
+            // No client proxy: every proxy sees the raw stream, as in a Test run
+            for (int id = 0; id < topology.size(); id++) {
+                parse(topology.proxy(id), List.of(data));
+            }
+            return;
+        }
+
+        NetworkTopology.Walk walk = topology.walk(data, stoppedRules);
+        while (walk.hasNext()) {
+            int id = walk.poll();
+            ProxyModel proxy = topology.proxy(id);
+            List<byte[]> payloads = walk.payloads(id);
+            if (payloads == null || payloads.isEmpty()) continue;
+
+            // Client doesn't parse - it forwards the raw bytes
+            List<byte[]> passed = proxy.isClient() ? payloads : parse(proxy, payloads);
+            if (proxy.isClient()) keep(proxy.getId(), payloads);
+            if (passed.isEmpty()) continue;
+
+            ParserChainRunner.forward(topology, walk, id, passed);
+        }
+    }
+
+    // What the proxy has parsed so far, as the single group a Test run shows: settled requests, then the unsettled rest
+    public synchronized List<List<byte[]>> groupsFor(ProxyModel proxy) {
+        List<byte[]> requests = new ArrayList<>(settled.getOrDefault(proxy.getId(), new ArrayDeque<>()));
+        requests.addAll(pending.getOrDefault(proxy.getId(), List.of()));
+        List<List<byte[]>> groups = new ArrayList<>();
+        if (!requests.isEmpty()) groups.add(requests);
+        groups.addAll(stoppedRules.errorGroups(proxy));
+        return groups;
+    }
+
+    public synchronized void reset() {
+        parsers.clear();
+        settled.clear();
+        pending.clear();
+        stoppedRules = new NetworkTopology.StoppedRules();
+    }
+
+    private List<byte[]> parse(ProxyModel proxy, List<byte[]> payloads) {
+        StreamingParser parser = parsers.computeIfAbsent(proxy.getId(), id -> new StreamingParser(proxy.getParserSettings()));
+        List<byte[]> passed = new ArrayList<>();
+        for (byte[] payload : payloads) {
+            StreamingParser.Update update = parser.feed(payload);
+            passed.addAll(update.settled());
+            pending.put(proxy.getId(), update.pending());
+        }
+        keep(proxy.getId(), passed);
+        return passed;
+    }
+
+    private void keep(String proxyId, List<byte[]> requests) {
+        Deque<byte[]> kept = settled.computeIfAbsent(proxyId, id -> new ArrayDeque<>());
+        for (byte[] request : requests) {
+            kept.addLast(request);
+            if (kept.size() > MAX_SETTLED_REQUESTS) kept.removeFirst();
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package httpraider.parser;
+
+import httpraider.model.network.HttpParserModel;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// Parses a proxy's side of a live stream as bytes arrive. Requests that nothing appended can change anymore are
+// handed out once and dropped; only the bytes after the last of them are parsed again on the next feed.
+// Settings edited mid-stream apply from the first request that has not settled yet.
+public final class StreamingParser {
+
+    // Every feed copies and parses the unsettled tail again, so a proxy stops parsing live once it grows past this
+    static final int MAX_TAIL = 1 << 20;
+
+    private final HttpParserModel model;
+    private byte[] tail = new byte[0];
+    private List<byte[]> pending = List.of();
+    private boolean closed;
+    private boolean stopped;
+
+    public StreamingParser(HttpParserModel model) {
+        this.model = model;
+    }
+
+    public Update feed(byte[] data) {
+        return feed(data, 0, data.length);
+    }
+
+    public synchronized Update feed(byte[] data, int offset, int length) {
+        if (closed || stopped || length == 0) return new Update(List.of(), pending);
+        byte[] buffer = Arrays.copyOf(tail, tail.length + length);
+        System.arraycopy(data, offset, buffer, tail.length, length);
+
+        ParserChainRunner.ParsedStream parsed = ParserChainRunner.parseStream(model, buffer, true);
+        List<byte[]> requests = parsed.requests();
+        List<byte[]> settled = new ArrayList<>(requests.subList(0, parsed.settled()));
+        closed = parsed.closed();
+        if (closed) {
+            // the WAF closed the connection, nothing after it reaches this proxy
+            tail = new byte[0];
+            pending = List.of();
+        } else if (parsed.overrun() != null) {
+            // a script ran past its budget and would spend it again on every feed; the error stays on show until reset
+            stopped = true;
+            tail = new byte[0];
+            pending = List.copyOf(requests.subList(parsed.settled(), requests.size()));
+        } else if (buffer.length - parsed.settledEnd() > MAX_TAIL) {
+            // nothing settled in a long while; the rest of the stream is left to a Test run
+            stopped = true;
+            tail = new byte[0];
+            String notice = "<parsing_error:\"Live parsing stopped: over " + (MAX_TAIL >> 10)
+                    + " KiB without a complete request, use Test to parse the stream\">";
+            pending = List.of(notice.getBytes(StandardCharsets.ISO_8859_1));
+        } else {
+            tail = parsed.settledEnd() == 0 ? buffer : Arrays.copyOfRange(buffer, parsed.settledEnd(), buffer.length);
+            pending = List.copyOf(requests.subList(parsed.settled(), requests.size()));
+        }
+        return new Update(settled, pending);
+    }
+
+    // Whether a WAF rule closed the connection, after which fed bytes are ignored
+    public synchronized boolean isClosed() {
+        return closed;
+    }
+
+    public synchronized void reset() {
+        tail = new byte[0];
+        pending = List.of();
+        closed = false;
+        stopped = false;
+    }
+
+    // The requests a feed settled, and how the bytes after them parse for now
+    public record Update(List<byte[]> settled, List<byte[]> pending) {}
+}
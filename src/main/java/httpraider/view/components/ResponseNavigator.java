@@ -0,0 +1,45 @@
+package httpraider.view.components;
+
+import javax.swing.*;
+import java.awt.*;
+import java.awt.event.ActionListener;
+
+public class ResponseNavigator extends JPanel implements ActionComponent {
+
+    public static final String PREVIOUS = "PREVIOUS";
+    public static final String NEXT = "NEXT";
+
+    private final JLabel label = new JLabel("0 responses");
+    private final JButton previous = new JButton("<");
+    private final JButton next = new JButton(">");
+
+    public ResponseNavigator() {
+        super(new FlowLayout(FlowLayout.RIGHT, 4, 0));
+        setOpaque(false);
+        previous.setActionCommand(PREVIOUS);
+        next.setActionCommand(NEXT);
+        previous.setMargin(new Insets(0, 4, 0, 4));
+        next.setMargin(new Insets(0, 4, 0, 4));
+        previous.setToolTipText("Jump to the previous response");
+        next.setToolTipText("Jump to the next response");
+        add(label);
+        add(previous);
+        add(next);
+    }
+
+    @Override
+    public void addActionListener(ActionListener listener) {
+        previous.addActionListener(listener);
+        next.addActionListener(listener);
+    }
+
+    // current is zero based, or -1 when no response has been selected yet
+    public void setPosition(int current, int complete, int total) {
+        String text = total == 1 ? "1 response" : total + " responses";
+        if (total > complete) text += " (" + (total - complete) + " incomplete)";
+        if (current >= 0) text = (current + 1) + " / " + text;
+        label.setText(text);
+        previous.setEnabled(current > 0);
+        next.setEnabled(current < total - 1);
+    }
+}
@@ -38,6 +38,8 @@ public class ConnectionBar extends JPanel {
     private State currentState;
     private final JButton sendButton;
     private final JCheckBox resetCheckBox;
+    private final JCheckBox syncCheckBox;
+    private final JLabel syncResult;
     private final JTextField hostField;
     private final JTextField portField;
     private final JCheckBox tlsCheckBox;
@@ -50,6 +52,8 @@ public class ConnectionBar extends JPanel {
         currentState = State.DISCONNECTED;
         sendButton = new JButton(TXT_BTN_CONNECT_AND_SEND);
         resetCheckBox = new JCheckBox();
+        syncCheckBox = new JCheckBox();
+        syncResult = new JLabel();
         statusMsg = new JLabel(TXT_STATUS_DISCONNECTED);
         hostField = new JTextField("localhost", 15);
         portField = new JTextField("80", 5);
@@ -81,6 +85,19 @@ public class ConnectionBar extends JPanel {
             }
         });
 
+        syncCheckBox.setOpaque(false);
+        syncCheckBox.setBackground(Color.WHITE);
+        syncCheckBox.setBorder(null);
+        syncCheckBox.setToolTipText("Send together with every other stream of this session that has this enabled");
+        JLabel syncLabel = new JLabel("Synchronized send");
+        syncLabel.addMouseListener(new MouseAdapter() {
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                syncCheckBox.setSelected(!isSyncSend());
+            }
+        });
+        syncResult.setForeground(Color.GRAY);
+
         tlsCheckBox.setOpaque(false);
         tlsCheckBox.setBackground(Color.WHITE);
         tlsCheckBox.setBorder(null);
@@ -109,6 +126,9 @@ public class ConnectionBar extends JPanel {
         left.add(sendButton);
         left.add(resetCheckBox);
         left.add(rstLabel);
+        left.add(syncCheckBox);
+        left.add(syncLabel);
+        left.add(syncResult);
 
         centre.add(statusMsg);
 
@@ -234,5 +254,13 @@ public class ConnectionBar extends JPanel {
         return resetCheckBox.isSelected();
     }
 
+    public boolean isSyncSend() {
+        return syncCheckBox.isSelected();
+    }
+
+    public void setSyncResult(String text) {
+        invokeLater(() -> syncResult.setText(text));
+    }
+
 
 }
@@ -0,0 +1,96 @@
+package httpraider.view.panels;
+
+import httpraider.view.filters.DigitDocumentFilter;
+
+import javax.swing.*;
+import javax.swing.border.EmptyBorder;
+import javax.swing.text.AbstractDocument;
+import java.awt.*;
+import java.awt.event.ActionListener;
+
+public class FloodPanel extends JPanel {
+
+    private final JTextField countField    = new JTextField("1000", 8);
+    private final JTextField durationField = new JTextField("0", 8);
+    private final JButton    startBtn      = new JButton("Start");
+    private final JButton    stopBtn       = new JButton("Stop");
+    private final JLabel     sentLabel      = new JLabel("-");
+    private final JLabel     requestsLabel  = new JLabel("-");
+    private final JLabel     bytesLabel     = new JLabel("-");
+    private final JLabel     responsesLabel = new JLabel("-");
+
+    public FloodPanel() {
+        super(new GridBagLayout());
+        setBorder(new EmptyBorder(8, 10, 8, 10));
+        ((AbstractDocument) countField.getDocument()).setDocumentFilter(new DigitDocumentFilter(9));
+        ((AbstractDocument) durationField.getDocument()).setDocumentFilter(new DigitDocumentFilter(6));
+        countField.setToolTipText("Number of copies to send, 0 for no limit");
+        durationField.setToolTipText("Seconds to keep sending, 0 for no limit");
+        stopBtn.setEnabled(false);
+
+        GridBagConstraints c = new GridBagConstraints();
+        c.insets = new Insets(3, 3, 3, 3);
+        c.anchor = GridBagConstraints.WEST;
+        int row = 0;
+        row = addRow(c, row, "Requests:", countField);
+        row = addRow(c, row, "Duration (s):", durationField);
+        JPanel buttons = new JPanel(new FlowLayout(FlowLayout.LEFT, 0, 0));
+        buttons.add(startBtn);
+        buttons.add(Box.createHorizontalStrut(6));
+        buttons.add(stopBtn);
+        row = addRow(c, row, "", buttons);
+        row = addRow(c, row, "Sent:", sentLabel);
+        row = addRow(c, row, "Requests/s:", requestsLabel);
+        row = addRow(c, row, "Bytes/s:", bytesLabel);
+        addRow(c, row, "Responses:", responsesLabel);
+    }
+
+    private int addRow(GridBagConstraints c, int row, String name, JComponent value) {
+        c.gridy = row;
+        c.gridx = 0;
+        JLabel label = new JLabel(name);
+        label.setFont(label.getFont().deriveFont(Font.BOLD));
+        add(label, c);
+        c.gridx = 1;
+        add(value, c);
+        return row + 1;
+    }
+
+    public long getCount() {
+        return parse(countField.getText());
+    }
+
+    public long getDurationSeconds() {
+        return parse(durationField.getText());
+    }
+
+    private static long parse(String text) {
+        try {
+            return Long.parseLong(text.trim());
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    public void setStartActionListener(ActionListener l) {
+        startBtn.addActionListener(l);
+    }
+
+    public void setStopActionListener(ActionListener l) {
+        stopBtn.addActionListener(l);
+    }
+
+    public void setRunning(boolean running) {
+        startBtn.setEnabled(!running);
+        stopBtn.setEnabled(running);
+        countField.setEnabled(!running);
+        durationField.setEnabled(!running);
+    }
+
+    public void setStats(String sent, String requestsPerSecond, String bytesPerSecond, String responses) {
+        sentLabel.setText(sent);
+        requestsLabel.setText(requestsPerSecond);
+        bytesLabel.setText(bytesPerSecond);
+        responsesLabel.setText(responses);
+    }
+}
@@ -14,7 +14,6 @@ import javax.swing.*;
 import java.awt.*;
 import java.awt.event.ActionListener;
 import java.lang.reflect.Method;
-import java.nio.ByteBuffer;
 
 import static javax.swing.SwingUtilities.invokeLater;
 
@@ -24,6 +23,7 @@ public class HttpEditorPanel<T extends Editor> extends JPanel {
     private final JLabel name;
     private final T editor;
     private ActionComponent component;
+    private ByteArray contents;
 
     public HttpEditorPanel(String text, T editor){
         super(new BorderLayout());
@@ -85,22 +85,25 @@ public class HttpEditorPanel<T extends Editor> extends JPanel {
     }
 
     public void setBytes(byte[] data){
+        invokeLater(() -> setContents(ByteArray.byteArray(data)));
+    }
+
+    // Appends to the contents last pushed to the editor instead of reading the whole editor back first
+    public void addBytes(byte[] data){
         invokeLater(() -> {
-            if (editor instanceof HttpRequestEditor)
-                ((HttpRequestEditor)editor).setRequest(HttpRequest.httpRequest(((HttpRequestEditor) editor).getRequest().httpService(), ByteArray.byteArray(data)));
-            else
-                ((WebSocketMessageEditor)editor).setContents(ByteArray.byteArray(data));
+            if (contents == null || editor.isModified()) {
+                contents = (editor instanceof HttpRequestEditor) ? ((HttpRequestEditor)editor).getRequest().toByteArray() : ((WebSocketMessageEditor)editor).getContents();
+            }
+            setContents(contents.withAppended(data));
         });
     }
 
-    public void addBytes(byte[] data){
-        byte[] concat;
+    private void setContents(ByteArray data){
+        contents = data;
         if (editor instanceof HttpRequestEditor)
-            concat = ByteBuffer.allocate(((HttpRequestEditor)editor).getRequest().toByteArray().getBytes().length + data.length).put(((HttpRequestEditor)editor).getRequest().toByteArray().getBytes()).put(data).array();
+            ((HttpRequestEditor)editor).setRequest(HttpRequest.httpRequest(((HttpRequestEditor) editor).getRequest().httpService(), data));
         else
-            concat = ByteBuffer.allocate(((WebSocketMessageEditor)editor).getContents().getBytes().length + data.length).put(((WebSocketMessageEditor)editor).getContents().getBytes()).put(data).array();
-
-        setBytes(concat);
+            ((WebSocketMessageEditor)editor).setContents(data);
     }
 
     public void clear(){
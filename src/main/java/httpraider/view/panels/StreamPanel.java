@@ -1,7 +1,9 @@
 package httpraider.view.panels;
 
 import extension.HTTPRaiderExtension;
+import httpraider.model.QueueBuffer;
 import httpraider.view.components.ActionButton;
+import httpraider.view.components.ResponseNavigator;
 import httpraider.view.menuBars.ConnectionBar;
 import httpraider.view.menuBars.InspectorBar;
 import burp.api.montoya.ui.editor.EditorOptions;
@@ -19,13 +21,21 @@ import static javax.swing.SwingUtilities.invokeLater;
 
 public class StreamPanel extends JPanel {
 
+    // Queues larger than this only show their tail; the full queue stays in the model
+    private static final int QUEUE_VIEW_WINDOW = 8 * 1024 * 1024;
+
     private final ConnectionBar connectionBar;
     private final InspectorBar inspectorBar;
     private final EditorToolsPanel editorToolsGadget;
+    private final TimelinePanel timelinePanel;
+    private final FloodPanel floodPanel;
     private final HttpEditorPanel<HttpRequestEditor> clientRequest;
     private final HttpEditorPanel<HttpRequestEditor> requestQueue;
     private final HttpEditorPanel<WebSocketMessageEditor> responseQueue;
     private final ActionButton testButton;
+    private final ResponseNavigator responseNavigator;
+    private final QueueView requestQueueView;
+    private final QueueView responseQueueView;
 
     public StreamPanel() {
         super(new BorderLayout());
@@ -34,11 +44,17 @@ public class StreamPanel extends JPanel {
         add(connectionBar, BorderLayout.NORTH);
         inspectorBar = new InspectorBar();
         editorToolsGadget = new EditorToolsPanel();
+        timelinePanel = new TimelinePanel();
+        floodPanel = new FloodPanel();
         add(inspectorBar, BorderLayout.EAST);
         clientRequest = new HttpEditorPanel<>("Client Request", HTTPRaiderExtension.API.userInterface().createHttpRequestEditor());
         requestQueue = new HttpEditorPanel<>("Request Queue", HTTPRaiderExtension.API.userInterface().createHttpRequestEditor(EditorOptions.READ_ONLY));
         responseQueue = new HttpEditorPanel<>("Response Queue", HTTPRaiderExtension.API.userInterface().createWebSocketMessageEditor(EditorOptions.READ_ONLY));
+        requestQueueView = new QueueView(requestQueue);
+        responseQueueView = new QueueView(responseQueue);
         testButton = new ActionButton("Test");
+        responseNavigator = new ResponseNavigator();
+        responseQueue.setComponent(responseNavigator);
         clientRequest.setComponent(testButton);
         setResponseHTTPsearch();
         setState(ConnectionBar.State.DISCONNECTED);
@@ -118,6 +134,14 @@ public class StreamPanel extends JPanel {
         return editorToolsGadget;
     }
 
+    public TimelinePanel getTimelinePanel() {
+        return timelinePanel;
+    }
+
+    public FloodPanel getFloodPanel() {
+        return floodPanel;
+    }
+
     public HttpEditorPanel<HttpRequestEditor> getClientRequestEditor() {
         return clientRequest;
     }
@@ -166,6 +190,36 @@ public class StreamPanel extends JPanel {
         requestQueue.setBytes(request.getBytes());
     }
 
+    public void showRequestQueue(QueueBuffer queue) {
+        requestQueueView.show(queue);
+    }
+
+    public void showResponseQueue(QueueBuffer queue) {
+        responseQueueView.show(queue);
+    }
+
+    public int appendRequestQueue(QueueBuffer queue) {
+        return requestQueueView.append(queue);
+    }
+
+    // Returns the editor position where the newly appended bytes start
+    public int appendResponseQueue(QueueBuffer queue) {
+        return responseQueueView.append(queue);
+    }
+
+    // Editor position of a response queue offset, or -1 if that part of the queue is not shown
+    public int getResponseQueueEditorPosition(long queuePosition) {
+        return responseQueueView.editorPosition(queuePosition);
+    }
+
+    public void setResponseNavigationListener(ActionListener l) {
+        responseNavigator.addActionListener(l);
+    }
+
+    public void setResponseNavigation(int current, int complete, int total) {
+        responseNavigator.setPosition(current, complete, total);
+    }
+
     public void setClientRequest(byte[] request) {
         clientRequest.setBytes(request);
     }
@@ -180,6 +234,8 @@ public class StreamPanel extends JPanel {
     }
 
     public void clearQueues() {
+        requestQueueView.reset();
+        responseQueueView.reset();
         requestQueue.clear();
         responseQueue.clear();
     }
@@ -211,4 +267,61 @@ public class StreamPanel extends JPanel {
         }
     }
 
+
+    private static final class QueueView {
+
+        private final HttpEditorPanel<?> editor;
+        private final String title;
+        private long start;
+        private long shown;
+
+        QueueView(HttpEditorPanel<?> editor) {
+            this.editor = editor;
+            this.title = editor.getName();
+        }
+
+        void show(QueueBuffer queue) {
+            byte[] tail = queue.drainTail(QUEUE_VIEW_WINDOW);
+            start = queue.size() - tail.length;
+            shown = tail.length;
+            editor.setBytes(tail);
+            updateTitle(queue.size());
+        }
+
+        int append(QueueBuffer queue) {
+            long pending = queue.size() - queue.flushedSize();
+            if (shown + pending > 2L * QUEUE_VIEW_WINDOW) {
+                show(queue);
+                return (int) Math.max(0, shown - pending);
+            }
+            int position = (int) shown;
+            byte[] delta = queue.drainDelta();
+            if (delta.length == 0) return position;
+            shown += delta.length;
+            editor.addBytes(delta);
+            updateTitle(queue.size());
+            return position;
+        }
+
+        int editorPosition(long queuePosition) {
+            long position = queuePosition - start;
+            return position < 0 || position > shown ? -1 : (int) position;
+        }
+
+        void reset() {
+            start = 0;
+            shown = 0;
+            editor.setName(title);
+        }
+
+        private void updateTitle(long total) {
+            editor.setName(total > shown ? title + " (last " + formatSize(shown) + " of " + formatSize(total) + ")" : title);
+        }
+
+        private static String formatSize(long bytes) {
+            if (bytes < 1024) return bytes + " B";
+            if (bytes < 1024 * 1024) return (bytes / 1024) + " KB";
+            return String.format("%.1f MB", bytes / (1024.0 * 1024.0));
+        }
+    }
 }
@@ -0,0 +1,62 @@
+package httpraider.view.panels;
+
+import javax.swing.*;
+import javax.swing.border.EmptyBorder;
+import javax.swing.table.DefaultTableModel;
+import java.awt.*;
+
+public class TimelinePanel extends JPanel {
+
+    private static final String[] COLUMNS = {"+ms", "Event", "Bytes"};
+
+    private final JLabel connectLabel   = new JLabel("-");
+    private final JLabel handshakeLabel = new JLabel("-");
+    private final JLabel firstByteLabel = new JLabel("-");
+    private final JLabel lastByteLabel  = new JLabel("-");
+    private final JLabel receivedLabel  = new JLabel("-");
+    private final DefaultTableModel tableModel = new DefaultTableModel(COLUMNS, 0) {
+        @Override
+        public boolean isCellEditable(int row, int column) {
+            return false;
+        }
+    };
+
+    public TimelinePanel() {
+        super(new BorderLayout(0, 8));
+        setBorder(new EmptyBorder(8, 10, 8, 10));
+
+        JPanel summary = new JPanel(new GridLayout(0, 2, 8, 4));
+        addRow(summary, "TCP connect:", connectLabel);
+        addRow(summary, "TLS handshake:", handshakeLabel);
+        addRow(summary, "First byte:", firstByteLabel);
+        addRow(summary, "Last byte:", lastByteLabel);
+        addRow(summary, "Received:", receivedLabel);
+        add(summary, BorderLayout.NORTH);
+
+        JTable table = new JTable(tableModel);
+        table.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 12));
+        table.setFillsViewportHeight(true);
+        JScrollPane scroller = new JScrollPane(table);
+        scroller.setPreferredSize(new Dimension(300, 420));
+        add(scroller, BorderLayout.CENTER);
+    }
+
+    private static void addRow(JPanel panel, String name, JLabel value) {
+        JLabel label = new JLabel(name);
+        label.setFont(label.getFont().deriveFont(Font.BOLD));
+        panel.add(label);
+        panel.add(value);
+    }
+
+    public void setSummary(String connect, String handshake, String firstByte, String lastByte, String received) {
+        connectLabel.setText(connect);
+        handshakeLabel.setText(handshake);
+        firstByteLabel.setText(firstByte);
+        lastByteLabel.setText(lastByte);
+        receivedLabel.setText(received);
+    }
+
+    public void setRows(Object[][] rows) {
+        tableModel.setDataVector(rows, COLUMNS);
+    }
+}
@@ -0,0 +1,58 @@
+package httpraider.controller.engines;
+
+import org.junit.jupiter.api.Test;
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.Scriptable;
+import org.mozilla.javascript.ScriptableObject;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+// Per-call cost of running a small script: the way every call used to work (new Context, full standard scope,
+// evaluateString) against JSEngine. The test only checks both give the same output; after gradle shadowJar testClasses,
+// run the timing with the extension jar and the test classes:
+//   java -cp build/libs/HTTP-Hacker-all.jar:build/classes/java/test httpraider.controller.engines.JSEngineBenchmark [calls]
+final class JSEngineBenchmark {
+
+    private static final String SCRIPT = "output = input.toUpperCase().split('').reverse().join('');";
+
+    @Test
+    void sameOutputAsFreshContext() {
+        for (int i = 0; i < 100; i++) {
+            String input = "GET /" + i + " HTTP/1.1";
+            assertEquals(runFresh(input), JSEngine.runTagEngine(SCRIPT, input));
+        }
+    }
+
+    public static void main(String[] args) {
+        int calls = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+        // warm up both paths before timing either
+        time(calls / 4, true);
+        time(calls / 4, false);
+        long before = time(calls, true);
+        long after = time(calls, false);
+        System.out.printf("fresh context and scope: %,d ns/call%n", before / calls);
+        System.out.printf("JSEngine:                %,d ns/call%n", after / calls);
+    }
+
+    private static long time(int calls, boolean fresh) {
+        long start = System.nanoTime();
+        for (int i = 0; i < calls; i++) {
+            String input = "GET /" + i + " HTTP/1.1";
+            String output = fresh ? runFresh(input) : JSEngine.runTagEngine(SCRIPT, input);
+            if (output.isEmpty()) throw new IllegalStateException("script produced no output");
+        }
+        return System.nanoTime() - start;
+    }
+
+    private static String runFresh(String input) {
+        Context ctx = Context.enter();
+        try {
+            Scriptable scope = ctx.initStandardObjects();
+            ScriptableObject.putProperty(scope, "input", Context.javaToJS(input, scope));
+            ctx.evaluateString(scope, SCRIPT, "script", 1, null);
+            return Context.toString(ScriptableObject.getProperty(scope, "output"));
+        } finally {
+            Context.exit();
+        }
+    }
+}
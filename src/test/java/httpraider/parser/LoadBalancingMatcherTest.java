@@ -0,0 +1,241 @@
+package httpraider.parser;
+
+import httpraider.model.network.HeaderField;
+import httpraider.model.network.LoadBalancingRule;
+import httpraider.model.network.MatchMode;
+import httpraider.model.network.RuleType;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// The compiled matcher against the rule matching it replaced, kept below as it was before the rules were compiled
+class LoadBalancingMatcherTest {
+
+    private static final MatchMode[] MODES = {MatchMode.PREFIX, MatchMode.SUFFIX, MatchMode.EXACT, MatchMode.ANY_MATCH, null};
+    private static final RuleType[] TYPES = {RuleType.URL, RuleType.HEADERS, RuleType.HOST, RuleType.COOKIES, RuleType.METHOD, RuleType.BODY};
+    private static final String[] PATTERNS = {"", "/", "/api", "a", "Host", "1", "x", "get", "GET", "s", "adm", ".internal",
+            "(?s).*x=1.*", "[", null, "X-T", "host: a", "GET /"};
+    private static final String[] REQUESTS = {
+            "GET /api/x HTTP/1.1\r\nHost: a.internal\r\nCookie: s=admin; x=1\r\n\r\n",
+            "get / HTTP/1.1\r\nHOST: x\r\nX-T: 1\r\n\r\nbody x=1",
+            "\r\n\r\n", "", "GET", "   \r\nHost: a\r\n\r\n", "POST  /a HTTP/1.1\r\ncookie: =1;s\r\n\r\nx=1\r\n\r\nmore",
+            "GET /x HTTP/1.1\nHost: a\n\n", "GET /x HTTP/1.1\r\n\r\n\r\nHost: y\r\n", "PUT /q\r\nX-A:b\r\n\r\n",
+            "GET /a\r\n :x\r\nHost :a\r\n\tHost: b \r\n", "GET /\r\nhOsT:\u00c9a\r\ncookie:\r\nCOOKIE: s=1\r\n\r\n", "\r\n", "a\r\n",
+            "\r\n\r\n\r\n", "GET / HTTP/1.1\r\nX-T:  1  \r\n\r\r\n\n", ":\r\n:\r\n\r\n",
+    };
+
+    @Test
+    void randomRulesMatchLikeBefore() {
+        Random random = new Random(1);
+        for (int i = 0; i < 5000; i++) {
+            LoadBalancingRule rule = randomRule(random);
+            LoadBalancingMatcher matcher = new LoadBalancingMatcher(List.of(rule));
+            for (String text : REQUESTS) {
+                byte[] request = text.getBytes(StandardCharsets.ISO_8859_1);
+                boolean matched = matches(matcher, request);
+                boolean expected;
+                try {
+                    expected = oldRuleMatches(rule, request);
+                } catch (RuntimeException e) {
+                    // the only cases where the old matching threw out of the simulation; the rule now just doesn't match
+                    assertTrue(invalidBodyRegex(rule) || nullHeaderModeOrPattern(rule), () -> describe(rule) + " threw " + e);
+                    expected = false;
+                }
+                assertEquals(expected, matched, () -> describe(rule) + " on " + text.replace("\r", "\\r").replace("\n", "\\n"));
+            }
+        }
+    }
+
+    @Test
+    void invalidBodyRegexNoLongerThrows() {
+        LoadBalancingRule rule = rule(RuleType.BODY);
+        rule.setPattern("[");
+        byte[] request = "POST / HTTP/1.1\r\n\r\n[".getBytes(StandardCharsets.ISO_8859_1);
+        assertThrows(RuntimeException.class, () -> oldRuleMatches(rule, request));
+        assertFalse(matches(new LoadBalancingMatcher(List.of(rule)), request));
+    }
+
+    @Test
+    void nullHeaderModeOrPatternNoLongerThrows() {
+        LoadBalancingRule rule = rule(RuleType.HEADERS);
+        rule.setHeaderField(HeaderField.NAME);
+        rule.setPattern("Host");
+        rule.setMatchMode(null);
+        byte[] request = "GET / HTTP/1.1\r\nHost: a\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1);
+        assertThrows(RuntimeException.class, () -> oldRuleMatches(rule, request));
+        assertFalse(matches(new LoadBalancingMatcher(List.of(rule)), request));
+
+        rule.setMatchMode(MatchMode.ANY_MATCH);
+        rule.setPattern(null);
+        assertThrows(RuntimeException.class, () -> oldRuleMatches(rule, request));
+        assertFalse(matches(new LoadBalancingMatcher(List.of(rule)), request));
+    }
+
+    private static boolean invalidBodyRegex(LoadBalancingRule rule) {
+        if (rule.getRuleType() != RuleType.BODY) return false;
+        try {
+            Pattern.compile(rule.getPattern());
+            return false;
+        } catch (PatternSyntaxException e) {
+            return true;
+        }
+    }
+
+    private static boolean nullHeaderModeOrPattern(LoadBalancingRule rule) {
+        return rule.getRuleType() == RuleType.HEADERS && rule.getHeaderField() != HeaderField.NAME_VALUE
+                && (rule.getMatchMode() == null || rule.getPattern() == null);
+    }
+
+    private static boolean matches(LoadBalancingMatcher matcher, byte[] request) {
+        return matcher.firstMatch(request, new int[]{0}, new BitSet(), (rule, message) -> {}) == 0;
+    }
+
+    private static LoadBalancingRule rule(RuleType type) {
+        LoadBalancingRule rule = new LoadBalancingRule();
+        rule.setEnabled(true);
+        rule.setRuleType(type);
+        return rule;
+    }
+
+    private static LoadBalancingRule randomRule(Random random) {
+        LoadBalancingRule rule = rule(TYPES[random.nextInt(TYPES.length)]);
+        rule.setHeaderField(HeaderField.values()[random.nextInt(HeaderField.values().length)]);
+        rule.setPattern(pick(random, PATTERNS));
+        rule.setMatchMode(pick(random, MODES));
+        rule.setMatchOption(pick(random, MODES));
+        rule.setHostPattern(pick(random, PATTERNS));
+        rule.setHostMatchMode(pick(random, MODES));
+        rule.setCookieNamePattern(pick(random, PATTERNS));
+        rule.setCookieNameMatchMode(pick(random, MODES));
+        rule.setCookieValuePattern(pick(random, PATTERNS));
+        rule.setCookieValueMatchMode(pick(random, MODES));
+        rule.setHeaderNamePattern(pick(random, PATTERNS));
+        rule.setHeaderNameMatchMode(pick(random, MODES));
+        rule.setHeaderValuePattern(pick(random, PATTERNS));
+        rule.setHeaderValueMatchMode(pick(random, MODES));
+        return rule;
+    }
+
+    private static <T> T pick(Random random, T[] values) {
+        return values[random.nextInt(values.length)];
+    }
+
+    private static String describe(LoadBalancingRule rule) {
+        return rule.getRuleType() + " field=" + rule.getHeaderField() + " pattern=" + rule.getPattern()
+                + " mode=" + rule.getMatchMode() + " option=" + rule.getMatchOption()
+                + " host=" + rule.getHostPattern() + "/" + rule.getHostMatchMode()
+                + " cookie=" + rule.getCookieNamePattern() + "/" + rule.getCookieNameMatchMode()
+                + "=" + rule.getCookieValuePattern() + "/" + rule.getCookieValueMatchMode()
+                + " header=" + rule.getHeaderNamePattern() + "/" + rule.getHeaderNameMatchMode()
+                + ":" + rule.getHeaderValuePattern() + "/" + rule.getHeaderValueMatchMode();
+    }
+
+    // The rule matching as ParserChainRunner did it before LoadBalancingMatcher, minus custom rules
+    private static boolean oldRuleMatches(LoadBalancingRule rule, byte[] request) {
+        String requestStr = new String(request, StandardCharsets.ISO_8859_1);
+        String[] headerBody = requestStr.split("\r\n\r\n", 2);
+        String headersBlock = headerBody.length > 0 ? headerBody[0] : "";
+        String body = headerBody.length > 1 ? headerBody[1] : "";
+
+        switch (rule.getRuleType()) {
+            case URL:
+                String[] reqParts = headersBlock.split("\r\n", 2)[0].split(" ");
+                String url = reqParts.length > 1 ? reqParts[1] : null;
+                if (url == null) return false;
+                String urlPattern = rule.getPattern();
+                if (urlPattern == null) return false;
+                MatchMode matchOpt = rule.getMatchOption();
+                if (matchOpt == null) matchOpt = MatchMode.EXACT;
+                return oldMatches(matchOpt, url, urlPattern);
+            case HEADERS:
+                String headerPattern = rule.getPattern();
+                HeaderField field = rule.getHeaderField();
+                if (field == HeaderField.NAME_VALUE) {
+                    for (String line : headersBlock.split("\r\n")) {
+                        int idx = line.indexOf(':');
+                        if (idx > 0) {
+                            String name = line.substring(0, idx).trim();
+                            String value = line.substring(idx + 1).trim();
+                            if (oldMatches(rule.getHeaderNameMatchMode(), name, rule.getHeaderNamePattern())
+                                    && oldMatches(rule.getHeaderValueMatchMode(), value, rule.getHeaderValuePattern())) {
+                                return true;
+                            }
+                        }
+                    }
+                    return false;
+                }
+                MatchMode mode = rule.getMatchMode();
+                for (String line : headersBlock.split("\r\n")) {
+                    int idx = line.indexOf(':');
+                    String testStr = null;
+                    if (field == HeaderField.NAME && idx > 0) testStr = line.substring(0, idx).trim();
+                    else if (field == HeaderField.VALUE && idx > 0) testStr = line.substring(idx + 1).trim();
+                    else if (field == HeaderField.HEADER_LINE) testStr = line;
+                    if (testStr != null) {
+                        switch (mode) {
+                            case PREFIX:    if (testStr.startsWith(headerPattern)) return true; break;
+                            case SUFFIX:    if (testStr.endsWith(headerPattern))   return true; break;
+                            case EXACT:     if (testStr.equals(headerPattern))     return true; break;
+                            case ANY_MATCH: if (testStr.contains(headerPattern))   return true; break;
+                        }
+                    }
+                }
+                return false;
+            case HOST:
+                for (String line : headersBlock.split("\r\n")) {
+                    if (line.toLowerCase().startsWith("host:")
+                            && oldMatches(rule.getHostMatchMode(), line.substring(5).trim(), rule.getHostPattern())) {
+                        return true;
+                    }
+                }
+                return false;
+            case COOKIES:
+                for (String line : headersBlock.split("\r\n")) {
+                    if (!line.toLowerCase().startsWith("cookie:")) continue;
+                    for (String cookie : line.substring(7).trim().split(";")) {
+                        String[] kv = cookie.trim().split("=", 2);
+                        String cname = kv.length > 0 ? kv[0].trim() : "";
+                        String cval = kv.length > 1 ? kv[1].trim() : "";
+                        if (oldMatches(rule.getCookieNameMatchMode(), cname, rule.getCookieNamePattern())
+                                && oldMatches(rule.getCookieValueMatchMode(), cval, rule.getCookieValuePattern())) {
+                            return true;
+                        }
+                    }
+                }
+                return false;
+            case METHOD:
+                String[] headerLines = headersBlock.split("\r\n");
+                if (headerLines.length == 0) return false;
+                String[] methodParts = headerLines[0].split(" ");
+                if (methodParts.length == 0) return false;
+                String mPattern = rule.getPattern();
+                return mPattern != null && methodParts[0].equalsIgnoreCase(mPattern);
+            case BODY:
+                String bodyPattern = rule.getPattern();
+                return bodyPattern != null && body.matches(bodyPattern);
+            default:
+                return false;
+        }
+    }
+
+    private static boolean oldMatches(MatchMode mode, String value, String pattern) {
+        if (pattern == null || mode == null) return false;
+        switch (mode) {
+            case PREFIX:    return value.startsWith(pattern);
+            case SUFFIX:    return value.endsWith(pattern);
+            case EXACT:     return value.equals(pattern);
+            case ANY_MATCH: return value.contains(pattern);
+            default:        return false;
+        }
+    }
+}
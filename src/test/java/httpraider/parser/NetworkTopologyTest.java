@@ -0,0 +1,197 @@
+package httpraider.parser;
+
+import httpraider.model.network.ConnectionModel;
+import httpraider.model.network.LoadBalancingRule;
+import httpraider.model.network.MatchMode;
+import httpraider.model.network.NetworkModel;
+import httpraider.model.network.ProxyModel;
+import httpraider.model.network.RuleType;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+// Routing over the indexed topology against the BFS it replaced, kept below as it walked the network model before.
+// Every proxy stands in for a parser by splitting what it gets on '\n', so only the routing is compared.
+class NetworkTopologyTest {
+
+    private static final String[] PAYLOADS = {
+            "GET / HTTP/1.1",
+            "GET /api/a HTTP/1.1\nGET /q?y HTTP/1.1\nGET / HTTP/1.1\nGET /api/y HTTP/1.1",
+            "POST /y HTTP/1.1\nGET /qy HTTP/1.1\nGET /apiy HTTP/1.1",
+    };
+    private static final String[] URL_PATTERNS = {"/", "/api", "y", "/q", ""};
+
+    @Test
+    void randomNetworksRouteLikeBefore() {
+        for (int seed = 0; seed < 200; seed++) {
+            NetworkModel network = randomNetwork(new Random(seed));
+            for (String payload : PAYLOADS) {
+                byte[] data = payload.getBytes(StandardCharsets.ISO_8859_1);
+                assertEquals(oldWalk(network, data), walk(network, data), "seed " + seed + ", payload " + payload);
+            }
+        }
+    }
+
+    private static NetworkModel randomNetwork(Random random) {
+        NetworkModel network = new NetworkModel();
+        int count = 5 + random.nextInt(61);
+        List<String> ids = new ArrayList<>();
+        ids.add(ProxyModel.CLIENT_ID);
+        for (int i = 0; i < count; i++) {
+            ProxyModel proxy = new ProxyModel("P" + i, "P" + i, "");
+            network.addProxy(proxy);
+            ids.add(proxy.getId());
+        }
+        for (int i = 0; i < count * 2; i++) {
+            network.addConnection(ids.get(random.nextInt(ids.size())), ids.get(1 + random.nextInt(count)));
+        }
+        for (int i = 1; i <= count; i++) {
+            if (random.nextInt(3) != 0) continue;
+            List<LoadBalancingRule> rules = new ArrayList<>();
+            for (int r = 0; r < 3; r++) {
+                LoadBalancingRule rule = new LoadBalancingRule();
+                rule.setEnabled(random.nextInt(5) != 0);
+                rule.setRuleType(RuleType.URL);
+                rule.setForwardToProxyId(ids.get(1 + random.nextInt(count)));
+                rule.setMatchOption(MatchMode.values()[random.nextInt(MatchMode.values().length)]);
+                rule.setPattern(URL_PATTERNS[random.nextInt(URL_PATTERNS.length)]);
+                rules.add(rule);
+            }
+            network.getProxy(ids.get(i)).getParserSettings().setLoadBalancingRules(rules);
+        }
+        return network;
+    }
+
+    private static List<byte[]> split(ProxyModel proxy, byte[] data) {
+        if (proxy.isClient()) return List.of(data);
+        List<byte[]> requests = new ArrayList<>();
+        for (String line : new String(data, StandardCharsets.ISO_8859_1).split("\n")) {
+            if (!line.isEmpty()) requests.add(line.getBytes(StandardCharsets.ISO_8859_1));
+        }
+        return requests;
+    }
+
+    // What reached each proxy, in order
+    private static Map<String, List<String>> walk(NetworkModel network, byte[] payload) {
+        NetworkTopology topology = NetworkTopology.of(network);
+        NetworkTopology.Walk walk = topology.walk(payload);
+        while (walk.hasNext()) {
+            int id = walk.poll();
+            List<byte[]> payloads = walk.payloads(id);
+            if (payloads == null || payloads.isEmpty() || topology.forward(id).length == 0) continue;
+            for (byte[] data : payloads) {
+                ParserChainRunner.forward(topology, walk, id, split(topology.proxy(id), data));
+            }
+        }
+        Map<String, List<String>> reached = new TreeMap<>();
+        for (int id = 0; id < topology.size(); id++) {
+            if (walk.payloads(id) != null) reached.put(topology.proxy(id).getId(), strings(walk.payloads(id)));
+        }
+        return reached;
+    }
+
+    // The BFS as ParserChainRunner ran it over the network model before NetworkTopology
+    private static Map<String, List<String>> oldWalk(NetworkModel network, byte[] payload) {
+        Map<String, List<byte[]>> proxyPayloads = new HashMap<>();
+        proxyPayloads.put(ProxyModel.CLIENT_ID, Arrays.asList(payload));
+        Queue<String> toProcess = new LinkedList<>();
+        toProcess.add(ProxyModel.CLIENT_ID);
+        Set<String> processed = new HashSet<>();
+
+        while (!toProcess.isEmpty()) {
+            String proxyId = toProcess.poll();
+            if (processed.contains(proxyId)) continue;
+            processed.add(proxyId);
+            ProxyModel proxy = network.getProxy(proxyId);
+            List<byte[]> payloadsForThisProxy = proxyPayloads.get(proxyId);
+            if (proxy == null || payloadsForThisProxy == null || payloadsForThisProxy.isEmpty()) continue;
+
+            List<ProxyModel> forwardConnections = new ArrayList<>();
+            for (ProxyModel p : directConnections(network, proxyId)) {
+                if (!p.isClient()) forwardConnections.add(p);
+            }
+            if (forwardConnections.isEmpty()) continue;
+
+            List<LoadBalancingRule> rules = new ArrayList<>();
+            for (LoadBalancingRule rule : proxy.getParserSettings().getLoadBalancingRules()) {
+                if (rule.isEnabled()) rules.add(rule);
+            }
+            for (byte[] data : payloadsForThisProxy) {
+                oldForward(forwardConnections, rules, split(proxy, data), processed, toProcess, proxyPayloads);
+            }
+        }
+
+        Map<String, List<String>> reached = new TreeMap<>();
+        proxyPayloads.forEach((id, requests) -> reached.put(id, strings(requests)));
+        return reached;
+    }
+
+    private static void oldForward(List<ProxyModel> forwardConnections, List<LoadBalancingRule> rules, List<byte[]> allRequests,
+                                   Set<String> processed, Queue<String> toProcess, Map<String, List<byte[]>> proxyPayloads) {
+        if (forwardConnections.size() == 1 && rules.isEmpty()) {
+            offer(forwardConnections.get(0).getId(), allRequests, processed, toProcess, proxyPayloads);
+        } else if (!rules.isEmpty()) {
+            for (byte[] req : allRequests) {
+                for (LoadBalancingRule rule : rules) {
+                    String targetProxyId = rule.getForwardToProxyId();
+                    if (targetProxyId == null) continue;
+                    boolean connected = forwardConnections.stream().anyMatch(p -> p.getId().equals(targetProxyId));
+                    if (connected && oldUrlMatches(rule, req)) {
+                        offer(targetProxyId, List.of(req), processed, toProcess, proxyPayloads);
+                        break;
+                    }
+                }
+            }
+        } else if (forwardConnections.size() > 1) {
+            offer(forwardConnections.get(0).getId(), allRequests, processed, toProcess, proxyPayloads);
+        }
+    }
+
+    private static void offer(String proxyId, List<byte[]> requests, Set<String> processed, Queue<String> toProcess,
+                              Map<String, List<byte[]>> proxyPayloads) {
+        if (processed.contains(proxyId) || toProcess.contains(proxyId)) return;
+        proxyPayloads.computeIfAbsent(proxyId, k -> new ArrayList<>()).addAll(requests);
+        toProcess.add(proxyId);
+    }
+
+    // NetworkController.getDirectConnections
+    private static List<ProxyModel> directConnections(NetworkModel network, String proxyId) {
+        Set<String> directIds = new HashSet<>();
+        for (ConnectionModel c : network.getConnections()) {
+            if (c.getFromId().equals(proxyId)) {
+                directIds.add(c.getToId());
+            } else if (c.getToId().equals(proxyId)) {
+                directIds.add(c.getFromId());
+            }
+        }
+        List<ProxyModel> result = new ArrayList<>();
+        for (String id : directIds) {
+            ProxyModel p = network.getProxy(id);
+            if (p != null) result.add(p);
+        }
+        return result;
+    }
+
+    private static boolean oldUrlMatches(LoadBalancingRule rule, byte[] request) {
+        String[] parts = new String(request, StandardCharsets.ISO_8859_1).split("\r\n", 2)[0].split(" ");
+        if (parts.length < 2 || rule.getPattern() == null) return false;
+        String url = parts[1];
+        MatchMode mode = rule.getMatchOption() != null ? rule.getMatchOption() : MatchMode.EXACT;
+        switch (mode) {
+            case PREFIX:    return url.startsWith(rule.getPattern());
+            case SUFFIX:    return url.endsWith(rule.getPattern());
+            case EXACT:     return url.equals(rule.getPattern());
+            case ANY_MATCH: return url.contains(rule.getPattern());
+            default:        return false;
+        }
+    }
+
+    private static List<String> strings(List<byte[]> requests) {
+        List<String> out = new ArrayList<>();
+        for (byte[] request : requests) out.add(new String(request, StandardCharsets.ISO_8859_1));
+        return out;
+    }
+}